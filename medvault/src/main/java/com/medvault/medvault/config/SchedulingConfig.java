@@ -0,0 +1,10 @@
+package com.medvault.medvault.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Enables @Scheduled background jobs (token revocation polling, cleanups, slot hold expiry)
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -2,11 +2,23 @@ package com.medvault.medvault.controller;
 
 import com.medvault.medvault.dto.AdminUserDto;
 import com.medvault.medvault.model.User;
+import com.medvault.medvault.service.RefreshTokenService;
+import com.medvault.medvault.service.ScheduleCounters;
+import com.medvault.medvault.service.ScheduleGenerator;
+import com.medvault.medvault.service.ScheduleSlotService;
+import com.medvault.medvault.service.SlotCodec;
+import com.medvault.medvault.service.UserImportService;
 import com.medvault.medvault.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @RestController
@@ -15,8 +27,24 @@ import java.util.stream.Collectors;
 public class AdminController {
 
     private final UserService userService;
+    private final RefreshTokenService refreshTokenService;
+    private final UserImportService userImportService;
+    private final ScheduleGenerator scheduleGenerator;
+    private final ScheduleCounters scheduleCounters;
+    private final ScheduleSlotService slotService;
+    private final SlotCodec slotCodec;
 
-    public AdminController(UserService userService) { this.userService = userService; }
+    public AdminController(UserService userService, RefreshTokenService refreshTokenService,
+                           UserImportService userImportService, ScheduleGenerator scheduleGenerator,
+                           ScheduleCounters scheduleCounters, ScheduleSlotService slotService, SlotCodec slotCodec) {
+        this.userService = userService;
+        this.refreshTokenService = refreshTokenService;
+        this.userImportService = userImportService;
+        this.scheduleGenerator = scheduleGenerator;
+        this.scheduleCounters = scheduleCounters;
+        this.slotService = slotService;
+        this.slotCodec = slotCodec;
+    }
 
     @GetMapping("/users")
     public ResponseEntity<List<AdminUserDto>> listUsers(@RequestParam(name = "role", required = false) String role) {
@@ -56,11 +84,64 @@ public class AdminController {
     public ResponseEntity<?> reject(@PathVariable Long id) {
         try {
             userService.setApproval(id, false, "REJECTED");
+            // access tokens are refused via the user-status cache; stop them being renewed too
+            refreshTokenService.revokeAllForUser(id);
             return ResponseEntity.ok().build();
         } catch (Exception ex) {
             return ResponseEntity.status(404).body(ex.getMessage());
         }
     }
 
-}
+    // Bulk onboarding: streamed text/csv (name,email,role,password) or application/x-ndjson body
+    @PostMapping(value = "/users/import", consumes = {"text/csv", "application/x-ndjson"})
+    public ResponseEntity<?> importUsers(HttpServletRequest request,
+                                         @RequestParam(name = "approve", defaultValue = "true") boolean approve) {
+        try {
+            boolean ndjson = request.getContentType() != null && request.getContentType().startsWith("application/x-ndjson");
+            return ResponseEntity.ok(userImportService.importUsers(request.getInputStream(), ndjson, approve));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(ex.getMessage());
+        } catch (Exception ex) {
+            return ResponseEntity.status(500).body("Import failed: " + ex.getMessage());
+        }
+    }
 
+    // Materialize schedules from weekly templates now instead of waiting for the nightly top-up
+    @PostMapping("/schedules/generate")
+    public ResponseEntity<?> generateSchedules(@RequestParam(name = "doctorUserId", required = false) Long doctorUserId) {
+        try {
+            return ResponseEntity.ok(doctorUserId == null
+                    ? scheduleGenerator.generateAll()
+                    : scheduleGenerator.generateFor(doctorUserId));
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(409).body(ex.getMessage());
+        }
+    }
+
+    // Recomputes the free-slot counters of upcoming days now instead of waiting for the scheduled check
+    @PostMapping("/schedules/check-counters")
+    public ResponseEntity<?> checkScheduleCounters() {
+        return ResponseEntity.ok(Map.of("drift", scheduleCounters.runCheck()));
+    }
+
+    // The pre-V8 slots_json record of a schedule next to its slot rows; "missing" lists legacy ids with no row
+    @GetMapping("/schedules/{scheduleId}/legacy-slots")
+    public ResponseEntity<?> legacySlots(@PathVariable Long scheduleId) {
+        try {
+            List<SlotCodec.Slot> legacy = slotCodec.decode(slotService.legacySlotsJson(scheduleId));
+            Set<String> current = new HashSet<>();
+            slotService.slotsFor(scheduleId).forEach(slot -> current.add(slot.getSlotKey()));
+            List<String> missing = new ArrayList<>();
+            for (SlotCodec.Slot slot : legacy) {
+                if (!current.contains(slot.id)) missing.add(slot.id);
+            }
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("legacy", legacy);
+            body.put("missing", missing);
+            return ResponseEntity.ok(body);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(ex.getMessage());
+        }
+    }
+
+}
@@ -1,21 +1,26 @@
 package com.medvault.medvault.controller;
 
 import com.medvault.medvault.model.Appointment;
-import com.medvault.medvault.model.DoctorSchedule;
 import com.medvault.medvault.repository.AppointmentRepository;
-import com.medvault.medvault.repository.DoctorScheduleRepository;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.core.type.TypeReference;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.LockModeType;
+import com.medvault.medvault.service.AppointmentListingService;
+import com.medvault.medvault.service.AppointmentTimes;
+import com.medvault.medvault.service.BatchBookingException;
+import com.medvault.medvault.service.BatchBookingService;
+import com.medvault.medvault.service.BookingTransactions;
+import com.medvault.medvault.service.IdempotencyService;
+import com.medvault.medvault.service.ScheduleSlotService;
+import com.medvault.medvault.service.ScheduleSlotService.Outcome;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import jakarta.servlet.http.HttpServletRequest;
 
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
 import java.util.*;
-import java.time.Instant;
-import java.time.format.DateTimeParseException;
 
 @RestController
 @RequestMapping("/api/appointments")
@@ -26,12 +31,22 @@ public class AppointmentController {
     private AppointmentRepository appointmentRepository;
 
     @Autowired
-    private DoctorScheduleRepository scheduleRepository;
+    private ScheduleSlotService slotService;
 
     @Autowired
-    private EntityManager em;
+    private IdempotencyService idempotency;
 
-    private final ObjectMapper mapper = new ObjectMapper();
+    @Autowired
+    private AppointmentListingService listingService;
+
+    @Autowired
+    private AppointmentTimes appointmentTimes;
+
+    @Autowired
+    private BatchBookingService batchBookingService;
+
+    @Autowired
+    private BookingTransactions bookingTransactions;
 
     static class CreateReq {
         public Long scheduleId;
@@ -45,218 +60,304 @@ public class AppointmentController {
 
     @PostMapping
     @Transactional
-    public ResponseEntity<?> createAppointment(@RequestBody CreateReq req) {
-        try {
-            // If scheduleId provided, lock the schedule row for update
-            DoctorSchedule schedule = null;
-            List<Map<String,Object>> slots = null;
-            if (req.scheduleId != null) {
-                schedule = em.find(DoctorSchedule.class, req.scheduleId, LockModeType.PESSIMISTIC_WRITE);
-                if (schedule == null) return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Schedule not found"));
-                slots = mapper.readValue(schedule.getSlotsJson(), new TypeReference<List<Map<String,Object>>>(){});
-                // find the slot
-                boolean found = false;
-                for (Map<String,Object> slot : slots) {
-                    Object id = slot.get("id");
-                    if (id != null && id.toString().equals(req.slotId)) {
-                        // check availability
-                        Boolean active = (Boolean) slot.getOrDefault("active", true);
-                        String reservedUntil = (String) slot.get("reservedUntil");
-                        if (!active) {
-                            return ResponseEntity.status(409).body(Map.of("success", false, "message", "Slot not available"));
-                        }
-                        if (reservedUntil != null) {
-                            // if reservedUntil in future, reject
-                                try {
-                                    Instant ru = Instant.parse(reservedUntil);
-                                    if (ru.isAfter(Instant.now())) {
-                                        return ResponseEntity.status(409).body(Map.of("success", false, "message", "Slot temporarily reserved"));
-                                    }
-                                } catch (DateTimeParseException ex) {
-                                    // ignore parse errors
-                                }
-                        }
-                        // mark inactive (booked)
-                        slot.put("active", false);
-                        slot.remove("reservedUntil");
-                        slot.remove("reservedBy");
-                        found = true;
-                        break;
-                    }
+    public ResponseEntity<?> createAppointment(@RequestBody CreateReq req, HttpServletRequest request,
+                                               @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotency.execute(idempotencyKey, scope(request), req, () -> {
+            try {
+                // If scheduleId provided, claim the slot with a single conditional update
+                if (req.scheduleId != null) {
+                    Outcome outcome = slotService.book(req.scheduleId, req.slotId, req.patientUserId);
+                    if (outcome != Outcome.OK) return rejection(outcome, "Slot not available", "Slot temporarily reserved", "Slot not found");
                 }
-                if (!found) return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Slot not found"));
-                schedule.setSlotsJson(mapper.writeValueAsString(slots));
-                scheduleRepository.save(schedule);
+
+                // create appointment
+                Appointment appt = new Appointment();
+                appt.setPatientUserId(req.patientUserId);
+                appt.setDoctorUserId(req.doctorUserId);
+                appt.setDoctorName(req.doctorName);
+                appt.setDate(req.date);
+                appt.setSlotTime(req.slotTime);
+                appointmentTimes.fill(appt);
+                appt.setStatus("CONFIRMED");
+                appt.setScheduleId(req.scheduleId);
+                appt.setSlotId(req.slotId);
+                Appointment saved = appointmentRepository.save(appt);
+
+                return ResponseEntity.ok(Map.of("success", true, "data", saved));
+            } catch (Exception e) {
+                // a slot claimed before the failure must not commit without its appointment
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                e.printStackTrace();
+                return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
             }
+        });
+    }
 
-            // create appointment
-            Appointment appt = new Appointment();
-            appt.setPatientUserId(req.patientUserId);
-            appt.setDoctorUserId(req.doctorUserId);
-            appt.setDoctorName(req.doctorName);
-            appt.setDate(req.date);
-            appt.setSlotTime(req.slotTime);
-            appt.setStatus("CONFIRMED");
-            appt.setScheduleId(req.scheduleId);
-            appt.setSlotId(req.slotId);
-            Appointment saved = appointmentRepository.save(appt);
-
-            return ResponseEntity.ok(Map.of("success", true, "data", saved));
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+    static class BatchReq {
+        public Long patientUserId;
+        public List<BatchBookingService.Item> slots;
+    }
+
+    // Book a series of slots (e.g. a treatment plan) all or nothing
+    @PostMapping("/batch")
+    public ResponseEntity<?> createAppointments(@RequestBody BatchReq req, HttpServletRequest request,
+                                                @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        try {
+            return bookingTransactions.execute(status -> idempotency.execute(idempotencyKey, scope(request), req, () -> {
+                try {
+                    List<Appointment> saved = batchBookingService.bookAll(req.patientUserId, req.slots);
+                    return ResponseEntity.ok(Map.of("success", true, "data", saved));
+                } catch (BatchBookingException e) {
+                    // nothing from the batch may commit; rolled back quietly since we answer normally
+                    status.setRollbackOnly();
+                    return ResponseEntity.status(409).body(Map.of("success", false, "message", e.getMessage(), "failures", e.getFailures()));
+                } catch (IllegalArgumentException e) {
+                    return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+                }
+            }));
+        } catch (RuntimeException e) {
+            if (BookingTransactions.isContention(e)) return busy();
+            throw e;
         }
     }
 
     // Reserve a slot for short TTL (seconds)
     @PostMapping("/reserve/{scheduleId}/{slotId}")
     @Transactional
-    public ResponseEntity<?> reserveSlot(@PathVariable Long scheduleId, @PathVariable String slotId, @RequestBody Map<String,Object> body) {
-        try {
-            Long patientUserId = body.get("patientUserId") == null ? null : Long.valueOf(body.get("patientUserId").toString());
-            Integer ttl = body.get("ttl") == null ? 300 : Integer.valueOf(body.get("ttl").toString());
-            DoctorSchedule schedule = em.find(DoctorSchedule.class, scheduleId, LockModeType.PESSIMISTIC_WRITE);
-            if (schedule == null) return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Schedule not found"));
-            List<Map<String,Object>> slots = mapper.readValue(schedule.getSlotsJson(), new TypeReference<List<Map<String,Object>>>(){});
-            boolean found = false;
-            for (Map<String,Object> slot : slots) {
-                Object id = slot.get("id");
-                if (id != null && id.toString().equals(slotId)) {
-                    Boolean active = (Boolean) slot.getOrDefault("active", true);
-                    String reservedUntil = (String) slot.get("reservedUntil");
-                    if (!active) return ResponseEntity.status(409).body(Map.of("success", false, "message", "Slot not available"));
-                    if (reservedUntil != null) {
-                        try { Instant ru = Instant.parse(reservedUntil); if (ru.isAfter(Instant.now())) return ResponseEntity.status(409).body(Map.of("success", false, "message", "Already reserved")); } catch(Exception ex) {}
-                    }
-                    Instant until = Instant.now().plusSeconds(ttl.longValue());
-                    String untilIso = until.toString();
-                    slot.put("reservedUntil", untilIso);
-                    slot.put("reservedBy", patientUserId);
-                    found = true;
-                    break;
-                }
+    public ResponseEntity<?> reserveSlot(@PathVariable Long scheduleId, @PathVariable String slotId, @RequestBody Map<String,Object> body,
+                                         HttpServletRequest request,
+                                         @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotency.execute(idempotencyKey, scope(request), body, () -> {
+            try {
+                Long patientUserId = body.get("patientUserId") == null ? null : Long.valueOf(body.get("patientUserId").toString());
+                Integer ttl = body.get("ttl") == null ? 300 : Integer.valueOf(body.get("ttl").toString());
+                Outcome outcome = slotService.reserve(scheduleId, slotId, patientUserId, ttl.longValue());
+                if (outcome != Outcome.OK) return rejection(outcome, "Slot not available", "Already reserved", "Slot not found");
+                return ResponseEntity.ok(Map.of("success", true, "reservedUntil", true));
+            } catch (Exception e) {
+                // a slot claimed before the failure must not commit without its appointment
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                e.printStackTrace();
+                return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
             }
-            if (!found) return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Slot not found"));
-            schedule.setSlotsJson(mapper.writeValueAsString(slots));
-            scheduleRepository.save(schedule);
-            return ResponseEntity.ok(Map.of("success", true, "reservedUntil", true));
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
-        }
+        });
     }
 
     @PatchMapping("/{id}/cancel")
     @Transactional
-    public ResponseEntity<?> cancelAppointment(@PathVariable Long id, @RequestBody Map<String,Object> body) {
-        try {
-            Optional<Appointment> opt = appointmentRepository.findById(id);
-            if (opt.isEmpty()) return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Appointment not found"));
-            Appointment appt = opt.get();
-            appt.setStatus("CANCELLED");
-            appointmentRepository.save(appt);
-            // re-enable slot if applicable
-            if (appt.getScheduleId() != null && appt.getSlotId() != null) {
-                DoctorSchedule schedule = em.find(DoctorSchedule.class, appt.getScheduleId(), LockModeType.PESSIMISTIC_WRITE);
-                if (schedule != null) {
-                    List<Map<String,Object>> slots = mapper.readValue(schedule.getSlotsJson(), new TypeReference<List<Map<String,Object>>>(){});
-                    for (Map<String,Object> slot : slots) {
-                        Object idv = slot.get("id");
-                        if (idv != null && idv.toString().equals(appt.getSlotId())) {
-                            slot.put("active", true);
-                            slot.remove("reservedUntil");
-                            slot.remove("reservedBy");
-                            break;
-                        }
+    public ResponseEntity<?> cancelAppointment(@PathVariable Long id, @RequestBody(required = false) Map<String,Object> body,
+                                               HttpServletRequest request,
+                                               @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotency.execute(idempotencyKey, scope(request), body, () -> {
+            try {
+                Optional<Appointment> opt = appointmentRepository.findByIdForUpdate(id);
+                if (opt.isEmpty()) return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Appointment not found"));
+                Appointment appt = opt.get();
+                // a second cancel must not release the slot again: it may have been booked by someone else since
+                boolean wasLive = !"CANCELLED".equals(appt.getStatus());
+                appt.setStatus("CANCELLED");
+                appointmentRepository.save(appt);
+                // re-enable slot if applicable
+                if (wasLive && appt.getScheduleId() != null && appt.getSlotId() != null) {
+                    // another request's change to the slot is still uncommitted (booking engine); retry, don't leak it
+                    if (slotService.release(appt.getScheduleId(), appt.getSlotId()) == Outcome.CONFLICT) {
+                        TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                        return busy();
                     }
-                    schedule.setSlotsJson(mapper.writeValueAsString(slots));
-                    scheduleRepository.save(schedule);
                 }
+                return ResponseEntity.ok(Map.of("success", true, "data", appt));
+            } catch (Exception e) {
+                // a slot claimed before the failure must not commit without its appointment
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                e.printStackTrace();
+                return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
             }
-            return ResponseEntity.ok(Map.of("success", true, "data", appt));
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
-        }
+        });
     }
 
+    // Appointment row, then both slot rows in lock order; deadlocks are retried by BookingTransactions
     @PatchMapping("/{id}/reschedule")
-    @Transactional
-    public ResponseEntity<?> rescheduleAppointment(@PathVariable Long id, @RequestBody Map<String,Object> body) {
+    public ResponseEntity<?> rescheduleAppointment(@PathVariable Long id, @RequestBody Map<String,Object> body,
+                                                   HttpServletRequest request,
+                                                   @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
         try {
-            Optional<Appointment> opt = appointmentRepository.findById(id);
-            if (opt.isEmpty()) return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Appointment not found"));
-            Appointment appt = opt.get();
-
-            Long newScheduleId = body.get("scheduleId") == null ? null : Long.valueOf(body.get("scheduleId").toString());
-            String newSlotId = body.get("slotId") == null ? null : body.get("slotId").toString();
-            String newDate = body.get("date") == null ? appt.getDate() : body.get("date").toString();
-            String newSlotTime = body.get("slotTime") == null ? appt.getSlotTime() : body.get("slotTime").toString();
-
-            // re-enable old slot if present
-            if (appt.getScheduleId() != null && appt.getSlotId() != null) {
-                DoctorSchedule old = em.find(DoctorSchedule.class, appt.getScheduleId(), LockModeType.PESSIMISTIC_WRITE);
-                if (old != null) {
-                    List<Map<String,Object>> slots = mapper.readValue(old.getSlotsJson(), new TypeReference<List<Map<String,Object>>>(){});
-                    for (Map<String,Object> slot : slots) {
-                        Object idv = slot.get("id");
-                        if (idv != null && idv.toString().equals(appt.getSlotId())) {
-                            slot.put("active", true);
-                            slot.remove("reservedUntil");
-                            slot.remove("reservedBy");
-                            break;
-                        }
-                    }
-                    old.setSlotsJson(mapper.writeValueAsString(slots));
-                    scheduleRepository.save(old);
+            return bookingTransactions.execute(status -> rescheduleOnce(status, id, body, request, idempotencyKey));
+        } catch (RuntimeException e) {
+            if (BookingTransactions.isContention(e)) return busy();
+            throw e;
+        }
+    }
+
+    private ResponseEntity<?> rescheduleOnce(TransactionStatus status, Long id, Map<String,Object> body,
+                                             HttpServletRequest request, String idempotencyKey) {
+        return idempotency.execute(idempotencyKey, scope(request), body, () -> {
+            try {
+                Optional<Appointment> opt = appointmentRepository.findByIdForUpdate(id);
+                if (opt.isEmpty()) return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Appointment not found"));
+                Appointment appt = opt.get();
+                // its slot went back to the pool on cancel; releasing it again could free someone else's booking
+                if ("CANCELLED".equals(appt.getStatus())) {
+                    return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Appointment is cancelled"));
                 }
-            }
 
-            // reserve new slot (lock new schedule and mark inactive)
-            if (newScheduleId != null && newSlotId != null) {
-                DoctorSchedule nxt = em.find(DoctorSchedule.class, newScheduleId, LockModeType.PESSIMISTIC_WRITE);
-                if (nxt == null) return ResponseEntity.badRequest().body(Map.of("success", false, "message", "New schedule not found"));
-                List<Map<String,Object>> nslots = mapper.readValue(nxt.getSlotsJson(), new TypeReference<List<Map<String,Object>>>(){});
-                boolean found = false;
-                for (Map<String,Object> slot : nslots) {
-                    Object idv = slot.get("id");
-                    if (idv != null && idv.toString().equals(newSlotId)) {
-                        Boolean active = (Boolean) slot.getOrDefault("active", true);
-                        if (!active) return ResponseEntity.status(409).body(Map.of("success", false, "message", "New slot not available"));
-                        slot.put("active", false);
-                        slot.remove("reservedUntil");
-                        slot.remove("reservedBy");
-                        found = true; break;
+                Long newScheduleId = body.get("scheduleId") == null ? null : Long.valueOf(body.get("scheduleId").toString());
+                String newSlotId = body.get("slotId") == null ? null : body.get("slotId").toString();
+                String newDate = body.get("date") == null ? appt.getDate() : body.get("date").toString();
+                String newSlotTime = body.get("slotTime") == null ? appt.getSlotTime() : body.get("slotTime").toString();
+
+                if (newScheduleId != null && newSlotId != null) {
+                    boolean sameSlot = newScheduleId.equals(appt.getScheduleId()) && newSlotId.equals(appt.getSlotId());
+                    if (!sameSlot) {
+                        List<ScheduleSlotService.SlotRef> slots = new ArrayList<>(2);
+                        slots.add(new ScheduleSlotService.SlotRef(newScheduleId, newSlotId));
+                        if (appt.getScheduleId() != null && appt.getSlotId() != null) {
+                            slots.add(new ScheduleSlotService.SlotRef(appt.getScheduleId(), appt.getSlotId()));
+                        }
+                        slotService.lockInOrder(slots);
+
+                        // claim the new slot first so a failed reschedule leaves the old booking intact
+                        Outcome outcome = slotService.book(newScheduleId, newSlotId, appt.getPatientUserId());
+                        if (outcome == Outcome.SCHEDULE_NOT_FOUND) return ResponseEntity.badRequest().body(Map.of("success", false, "message", "New schedule not found"));
+                        if (outcome != Outcome.OK) return rejection(outcome, "New slot not available", "New slot not available", "New slot not found");
+
+                        // re-enable old slot if present
+                        if (appt.getScheduleId() != null && appt.getSlotId() != null
+                                && slotService.release(appt.getScheduleId(), appt.getSlotId()) == Outcome.CONFLICT) {
+                            status.setRollbackOnly(); // the new slot must not stay claimed
+                            return busy();
+                        }
                     }
+
+                    // update appointment
+                    appt.setScheduleId(newScheduleId);
+                    appt.setSlotId(newSlotId);
+                    appt.setDate(newDate);
+                    appt.setSlotTime(newSlotTime);
+                    appointmentTimes.fill(appt);
+                    appt.setStatus("RESCHEDULED");
+                    appointmentRepository.save(appt);
                 }
-                if (!found) return ResponseEntity.badRequest().body(Map.of("success", false, "message", "New slot not found"));
-                nxt.setSlotsJson(mapper.writeValueAsString(nslots));
-                scheduleRepository.save(nxt);
-
-                // update appointment
-                appt.setScheduleId(newScheduleId);
-                appt.setSlotId(newSlotId);
-                appt.setDate(newDate);
-                appt.setSlotTime(newSlotTime);
-                appt.setStatus("RESCHEDULED");
-                appointmentRepository.save(appt);
+
+                return ResponseEntity.ok(Map.of("success", true, "data", appt));
+            } catch(Exception e) {
+                BookingTransactions.rethrowIfContention(e);
+                status.setRollbackOnly();
+                e.printStackTrace();
+                return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
             }
+        });
+    }
 
-            return ResponseEntity.ok(Map.of("success", true, "data", appt));
-        } catch(Exception e) {
+    // Idempotency keys are scoped to the endpoint and the resource it addresses
+    private static String scope(HttpServletRequest request) {
+        return request.getMethod() + " " + request.getRequestURI();
+    }
+
+    private static ResponseEntity<?> busy() {
+        return ResponseEntity.status(503).header("Retry-After", "1")
+                .body(Map.of("success", false, "message", "Slots are busy, please retry"));
+    }
+
+    private ResponseEntity<?> rejection(Outcome outcome, String unavailable, String held, String slotNotFound) {
+        switch (outcome) {
+            case SCHEDULE_NOT_FOUND:
+                return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Schedule not found"));
+            case SLOT_NOT_FOUND:
+                return ResponseEntity.badRequest().body(Map.of("success", false, "message", slotNotFound));
+            case HELD:
+                return ResponseEntity.status(409).body(Map.of("success", false, "message", held));
+            case CONFLICT:
+                return busy(); // optimistic writes kept losing to concurrent changes
+            default:
+                return ResponseEntity.status(409).body(Map.of("success", false, "message", unavailable));
+        }
+    }
+
+    // Newest first, one page at a time: pass the returned nextCursor to get the following page
+    @GetMapping("/doctor/{doctorId}")
+    public ResponseEntity<?> getAppointmentsByDoctor(@PathVariable Long doctorId,
+                                                     @RequestParam(required = false) String status,
+                                                     @RequestParam(required = false) String from,
+                                                     @RequestParam(required = false) String to,
+                                                     @RequestParam(required = false) String cursor,
+                                                     @RequestParam(required = false) Integer limit) {
+        try {
+            return pageResponse(listingService.forDoctor(doctorId, filter(status, from, to, cursor, limit)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
         }
     }
 
-    @GetMapping("/doctor/{doctorId}")
-    public ResponseEntity<?> getAppointmentsByDoctor(@PathVariable Long doctorId) {
+    @GetMapping("/patient/{patientId}")
+    public ResponseEntity<?> getAppointmentsByPatient(@PathVariable Long patientId,
+                                                      @RequestParam(required = false) String status,
+                                                      @RequestParam(required = false) String from,
+                                                      @RequestParam(required = false) String to,
+                                                      @RequestParam(required = false) String cursor,
+                                                      @RequestParam(required = false) Integer limit) {
         try {
-            List<Appointment> appts = appointmentRepository.findByDoctorUserIdOrderByCreatedAtDesc(doctorId);
-            return ResponseEntity.ok(Map.of("success", true, "data", appts));
+            return pageResponse(listingService.forPatient(patientId, filter(status, from, to, cursor, limit)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
         }
     }
+
+    // Appointments starting in [from, to) (ISO-8601 instants); defaults to today in the clinic's zone
+    @GetMapping("/doctor/{doctorId}/agenda")
+    public ResponseEntity<?> getDoctorAgenda(@PathVariable Long doctorId,
+                                             @RequestParam(required = false) String from,
+                                             @RequestParam(required = false) String to) {
+        try {
+            OffsetDateTime[] range = agendaRange(from, to);
+            return ResponseEntity.ok(Map.of("success", true, "data", appointmentRepository.findDoctorAgenda(doctorId, range[0], range[1])));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/patient/{patientId}/agenda")
+    public ResponseEntity<?> getPatientAgenda(@PathVariable Long patientId,
+                                              @RequestParam(required = false) String from,
+                                              @RequestParam(required = false) String to) {
+        try {
+            OffsetDateTime[] range = agendaRange(from, to);
+            return ResponseEntity.ok(Map.of("success", true, "data", appointmentRepository.findPatientAgenda(patientId, range[0], range[1])));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        }
+    }
+
+    private OffsetDateTime[] agendaRange(String from, String to) {
+        LocalDate today = LocalDate.now(appointmentTimes.zone());
+        OffsetDateTime start = from == null || from.isBlank()
+                ? today.atStartOfDay(appointmentTimes.zone()).toOffsetDateTime() : OffsetDateTime.parse(from);
+        OffsetDateTime end = to == null || to.isBlank() ? start.plusDays(1) : OffsetDateTime.parse(to);
+        if (!end.isAfter(start)) throw new IllegalArgumentException("'to' must be after 'from'");
+        if (end.isAfter(start.plusDays(92))) throw new IllegalArgumentException("Agenda range is limited to 92 days");
+        return new OffsetDateTime[] {start, end};
+    }
+
+    private static AppointmentListingService.Filter filter(String status, String from, String to, String cursor, Integer limit) {
+        AppointmentListingService.Filter f = new AppointmentListingService.Filter();
+        f.status = status;
+        f.from = from;
+        f.to = to;
+        f.cursor = cursor;
+        f.limit = limit;
+        return f;
+    }
+
+    private static ResponseEntity<?> pageResponse(AppointmentListingService.Page page) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("success", true);
+        m.put("data", page.items);
+        m.put("nextCursor", page.nextCursor);
+        return ResponseEntity.ok(m);
+    }
 }
@@ -2,7 +2,15 @@ package com.medvault.medvault.controller;
 
 import com.medvault.medvault.dto.LoginRequest;
 import com.medvault.medvault.dto.LoginResponse;
+import com.medvault.medvault.security.AuthRateLimiter;
+import com.medvault.medvault.security.JwtClaims;
 import com.medvault.medvault.security.JwtUtil;
+import com.medvault.medvault.security.TokenRevocationList;
+import com.medvault.medvault.service.RefreshTokenService;
+import com.medvault.medvault.service.PasswordHashingBusyException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import com.medvault.medvault.dto.SignupRequest;
@@ -16,30 +24,53 @@ public class AuthController {
 
     private final UserService userService;
     private final JwtUtil jwtUtil;
+    private final AuthRateLimiter rateLimiter;
+    private final RefreshTokenService refreshTokenService;
+    private final TokenRevocationList revocationList;
 
-    public AuthController(UserService userService, JwtUtil jwtUtil) {
+    public AuthController(UserService userService, JwtUtil jwtUtil, AuthRateLimiter rateLimiter,
+                          RefreshTokenService refreshTokenService, TokenRevocationList revocationList) {
         this.userService = userService;
         this.jwtUtil = jwtUtil;
+        this.rateLimiter = rateLimiter;
+        this.refreshTokenService = refreshTokenService;
+        this.revocationList = revocationList;
     }
 
     @PostMapping("/login")
-    public ResponseEntity<LoginResponse> login(@RequestBody LoginRequest req) {
+    public ResponseEntity<LoginResponse> login(@RequestBody LoginRequest req, HttpServletRequest request) {
         // DB-backed login: find by email and verify password
         String email = req.getEmail();
         String password = req.getPassword();
 
+        long retryAfter = rateLimiter.check(request, email);
+        if (retryAfter > 0) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                    .body(new LoginResponse(false, "Too many login attempts. Please try again later.", null, null, null));
+        }
+
         var userOpt = userService.findByEmail(email);
         if (userOpt.isPresent()) {
             var user = userOpt.get();
-            if (userService.checkPassword(user, password)) {
+            boolean passwordOk;
+            try {
+                passwordOk = userService.checkPassword(user, password);
+            } catch (PasswordHashingBusyException ex) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .body(new LoginResponse(false, ex.getMessage(), null, null, null));
+            }
+            if (passwordOk) {
                 String role = user.getRoles();
                 String name = user.getUsername();
                 String identificationId = user.getIdentificationId();
                 
-                // Generate JWT token
+                // Generate short-lived JWT access token plus a server-side refresh token
                 String token = jwtUtil.generateToken(email, user.getId(), role, identificationId);
-                
-                return ResponseEntity.ok(new LoginResponse(true, "Login successful", role, name, user.getId(), identificationId, token));
+                LoginResponse resp = new LoginResponse(true, "Login successful", role, name, user.getId(), identificationId, token);
+                resp.setRefreshToken(refreshTokenService.issue(user.getId()));
+                return ResponseEntity.ok(resp);
             } else {
                 return ResponseEntity.ok(new LoginResponse(false, "Invalid credentials", null, null, null));
             }
@@ -48,14 +79,57 @@ public class AuthController {
         return ResponseEntity.ok(new LoginResponse(false, "Invalid credentials", null, null, null));
     }
 
+    static class RefreshRequest {
+        public String refreshToken;
+    }
+
+    // Exchange a refresh token for a new access token; the refresh token is rotated
+    @PostMapping("/auth/refresh")
+    public ResponseEntity<LoginResponse> refresh(@RequestBody RefreshRequest req) {
+        var userIdOpt = refreshTokenService.consume(req.refreshToken);
+        var userOpt = userIdOpt.flatMap(userService::findById);
+        if (userOpt.isEmpty() || "REJECTED".equalsIgnoreCase(userOpt.get().getStatus())) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new LoginResponse(false, "Invalid refresh token", null, null, null));
+        }
+        var user = userOpt.get();
+        String token = jwtUtil.generateToken(user.getEmail(), user.getId(), user.getRoles(), user.getIdentificationId());
+        LoginResponse resp = new LoginResponse(true, "Token refreshed", user.getRoles(), user.getUsername(), user.getId(), user.getIdentificationId(), token);
+        resp.setRefreshToken(refreshTokenService.issue(user.getId()));
+        return ResponseEntity.ok(resp);
+    }
+
+    // Revoke the presented access token (by jti) and, if given, the refresh token
+    @PostMapping("/auth/logout")
+    public ResponseEntity<?> logout(@RequestHeader(value = "Authorization", required = false) String authorization,
+                                    @RequestBody(required = false) RefreshRequest req) {
+        if (authorization != null && authorization.startsWith("Bearer ")) {
+            try {
+                JwtClaims claims = jwtUtil.verify(authorization.substring(7));
+                revocationList.revoke(claims.getJti(), claims.getExpiration().toInstant());
+            } catch (Exception ex) {
+                // already invalid or expired, nothing to revoke
+            }
+        }
+        if (req != null) refreshTokenService.revoke(req.refreshToken);
+        return ResponseEntity.ok().build();
+    }
+
     @PostMapping("/signup")
-    public ResponseEntity<SignupResponse> signup(@RequestBody SignupRequest req) {
+    public ResponseEntity<SignupResponse> signup(@RequestBody SignupRequest req, HttpServletRequest request) {
 
         String name = req.getName();
         String email = req.getEmail();
         String role = req.getRole(); // "patient" or "doctor"
         String password = req.getPassword();
 
+        long retryAfter = rateLimiter.check(request, email);
+        if (retryAfter > 0) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                    .body(new SignupResponse(false, "Too many signup attempts. Please try again later."));
+        }
+
         // Basic validation (similar to frontend)
         if (name == null || name.trim().isEmpty()
                 || email == null || email.trim().isEmpty()
@@ -91,6 +165,10 @@ public class AuthController {
         // Register the user in DB (username = name)
         try {
             userService.register(name, email, password, normalizedRole);
+        } catch (PasswordHashingBusyException ex) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(new SignupResponse(false, ex.getMessage()));
         } catch (Exception ex) {
             return ResponseEntity.status(500)
                     .body(new SignupResponse(false, "Unable to save user: " + ex.getMessage()));
@@ -3,7 +3,9 @@ package com.medvault.medvault.controller;
 import com.medvault.medvault.model.Doctor;
 import com.medvault.medvault.model.User;
 import com.medvault.medvault.service.DoctorService;
+import com.medvault.medvault.service.ScheduleGenerator;
 import com.medvault.medvault.service.UserService;
+import com.medvault.medvault.service.WeeklyTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -22,6 +24,9 @@ public class DoctorController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private ScheduleGenerator scheduleGenerator;
+
     // Get doctor profile by user ID
     @GetMapping("/profile/{userId}")
     public ResponseEntity<?> getDoctorProfile(@PathVariable Long userId) {
@@ -75,8 +80,21 @@ public class DoctorController {
             doctor.setDocumentPath(request.getDocumentPath());
             doctor.setBio(request.getBio());
 
+            // a weekly template is rejected up front rather than skipped later by the generator
+            if (WeeklyTemplate.isTemplate(request.getAvailabilitySchedule())) {
+                WeeklyTemplate.parse(request.getAvailabilitySchedule());
+            }
+
             Doctor savedDoctor = doctorService.createOrUpdateDoctor(doctor);
             System.out.println("Doctor profile saved successfully");
+            if (WeeklyTemplate.isTemplate(savedDoctor.getAvailabilitySchedule())) {
+                try {
+                    scheduleGenerator.generateFor(user.getId());
+                } catch (Exception ex) {
+                    // the nightly top-up picks the template up
+                    System.out.println("Schedule generation deferred: " + ex.getMessage());
+                }
+            }
             return ResponseEntity.ok(new ApiResponse(true, "Profile saved successfully", savedDoctor));
         } catch (Exception e) {
             System.out.println("ERROR saving doctor profile: " + e.getMessage());
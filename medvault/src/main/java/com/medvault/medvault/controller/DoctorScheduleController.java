@@ -1,17 +1,29 @@
 package com.medvault.medvault.controller;
 
 import com.medvault.medvault.model.DoctorSchedule;
+import com.medvault.medvault.model.ScheduleSlot;
 import com.medvault.medvault.repository.DoctorScheduleRepository;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.medvault.medvault.service.AppointmentTimes;
+import com.medvault.medvault.service.AvailabilitySearchService;
+import com.medvault.medvault.service.DoctorSummaryCache;
+import com.medvault.medvault.service.ScheduleSlotService;
+import com.medvault.medvault.service.SlotCodec;
+import com.medvault.medvault.service.SlotEventFeed;
+import com.medvault.medvault.service.ScheduleSlotService.Outcome;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.*;
-import com.medvault.medvault.service.DoctorService;
-import com.medvault.medvault.model.Doctor;
 
 @RestController
 @RequestMapping("/api/doctor/schedules")
@@ -22,25 +34,30 @@ public class DoctorScheduleController {
     private DoctorScheduleRepository scheduleRepository;
 
     @Autowired
-    private DoctorService doctorService;
+    private DoctorSummaryCache doctorSummaries;
 
-    private final ObjectMapper mapper = new ObjectMapper();
+    @Autowired
+    private ScheduleSlotService slotService;
 
-    static class SlotDTO {
-        public String id;
-        public String time;
-        public boolean active;
-    }
+    @Autowired
+    private SlotEventFeed slotEvents;
+
+    @Autowired
+    private AvailabilitySearchService availabilitySearch;
+
+    @Autowired
+    private AppointmentTimes appointmentTimes;
 
     static class CreateRequest {
         public Long doctorUserId;
         public String doctorName;
         public String specialization;
         public String date; // YYYY-MM-DD
-        public List<SlotDTO> slots;
+        public List<SlotCodec.Slot> slots;
     }
 
     @PostMapping
+    @Transactional
     public ResponseEntity<?> createSchedule(@RequestBody CreateRequest req) {
         try {
             DoctorSchedule s = new DoctorSchedule();
@@ -50,12 +67,9 @@ public class DoctorScheduleController {
             String specialization = req.specialization;
             try {
                 if (req.doctorUserId != null) {
-                    Optional<Doctor> dopt = doctorService.getDoctorByUserId(req.doctorUserId);
-                    if (dopt.isPresent()) {
-                        Doctor d = dopt.get();
-                        if (d.getFullName() != null && !d.getFullName().isBlank()) doctorName = d.getFullName();
-                        if (d.getSpecialization() != null && !d.getSpecialization().isBlank()) specialization = d.getSpecialization();
-                    }
+                    DoctorSummaryCache.Summary d = doctorSummaries.get(req.doctorUserId);
+                    if (d.fullName != null && !d.fullName.isBlank()) doctorName = d.fullName;
+                    if (d.specialization != null && !d.specialization.isBlank()) specialization = d.specialization;
                 }
             } catch (Exception ex) {
                 // ignore and use provided values
@@ -63,9 +77,24 @@ public class DoctorScheduleController {
             s.setDoctorName(doctorName);
             s.setSpecialization(specialization);
             s.setDate(LocalDate.parse(req.date));
-            s.setSlotsJson(mapper.writeValueAsString(req.slots));
             DoctorSchedule saved = scheduleRepository.save(s);
-            return ResponseEntity.ok(Map.of("success", true, "data", saved));
+
+            List<ScheduleSlot> slots = new ArrayList<>();
+            if (req.slots != null) {
+                for (SlotCodec.Slot in : req.slots) {
+                    ScheduleSlot slot = new ScheduleSlot();
+                    slot.setSlotKey(in.id != null ? in.id : UUID.randomUUID().toString());
+                    slot.setSlotTime(in.time);
+                    slot.setActive(in.active);
+                    if (in.reservedUntil != null) {
+                        slot.setReservedUntil(in.reservedUntil.atOffset(ZoneOffset.UTC));
+                        slot.setReservedBy(in.reservedBy);
+                    }
+                    slots.add(slot);
+                }
+            }
+            slots = slotService.createSlots(saved.getId(), slots);
+            return ResponseEntity.ok(Map.of("success", true, "data", toView(saved, slots, doctorName, specialization)));
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
@@ -76,30 +105,11 @@ public class DoctorScheduleController {
     public ResponseEntity<?> getSchedules(@PathVariable Long doctorUserId) {
         try {
             List<DoctorSchedule> list = scheduleRepository.findByDoctorUserIdOrderByDateAsc(doctorUserId);
-            // convert slotsJson into structure for client
+            Map<Long, List<ScheduleSlot>> slotsBySchedule = slotService.slotsFor(scheduleIds(list));
+            Map<Long, DoctorSummaryCache.Summary> doctors = doctorsFor(list);
             List<Map<String,Object>> out = new ArrayList<>();
             for (DoctorSchedule s : list) {
-                List<SlotDTO> slots = mapper.readValue(s.getSlotsJson(), new TypeReference<List<SlotDTO>>(){});
-                String doctorName = s.getDoctorName();
-                String specialization = s.getSpecialization();
-                try {
-                    if ((doctorName == null || doctorName.isBlank() || specialization == null || specialization.isBlank()) && s.getDoctorUserId() != null) {
-                        Optional<Doctor> dopt = doctorService.getDoctorByUserId(s.getDoctorUserId());
-                        if (dopt.isPresent()) {
-                            Doctor d = dopt.get();
-                            if (doctorName == null || doctorName.isBlank()) doctorName = d.getFullName();
-                            if (specialization == null || specialization.isBlank()) specialization = d.getSpecialization();
-                        }
-                    }
-                } catch (Exception ex) { }
-                Map<String,Object> m = new HashMap<>();
-                m.put("id", s.getId());
-                m.put("doctorUserId", s.getDoctorUserId());
-                m.put("doctorName", doctorName);
-                m.put("specialization", specialization);
-                m.put("date", s.getDate().toString());
-                m.put("slots", slots);
-                out.add(m);
+                out.add(toView(s, slotsBySchedule.getOrDefault(s.getId(), List.of()), doctors));
             }
             return ResponseEntity.ok(Map.of("success", true, "data", out));
         } catch (Exception e) {
@@ -108,38 +118,25 @@ public class DoctorScheduleController {
         }
     }
 
-    // Return doctors/dates that have at least one active slot
+    // Return doctors/dates that have at least one active, unheld slot
     @GetMapping("/available")
     public ResponseEntity<?> getAvailableSchedules() {
         try {
-            List<DoctorSchedule> list = scheduleRepository.findAll();
+            // days without an active slot are skipped on the counters, without reading their slots;
+            // past days keep their counters, so they are bounded off by date in the clinic's zone
+            List<DoctorSchedule> list = scheduleRepository.findByFreeSlotCountGreaterThanAndDateGreaterThanEqualOrderByDateAsc(
+                    0, LocalDate.now(appointmentTimes.zone()));
+            Map<Long, List<ScheduleSlot>> slotsBySchedule = slotService.slotsFor(scheduleIds(list));
+            Map<Long, DoctorSummaryCache.Summary> doctors = doctorsFor(list);
+            OffsetDateTime now = OffsetDateTime.now();
             List<Map<String,Object>> out = new ArrayList<>();
             for (DoctorSchedule s : list) {
-                List<SlotDTO> slots = mapper.readValue(s.getSlotsJson(), new TypeReference<List<SlotDTO>>(){});
-                List<SlotDTO> active = new ArrayList<>();
-                for (SlotDTO slot : slots) if (slot.active) active.add(slot);
-                if (!active.isEmpty()) {
-                    String doctorName = s.getDoctorName();
-                    String specialization = s.getSpecialization();
-                    try {
-                        if ((doctorName == null || doctorName.isBlank() || specialization == null || specialization.isBlank()) && s.getDoctorUserId() != null) {
-                            Optional<Doctor> dopt = doctorService.getDoctorByUserId(s.getDoctorUserId());
-                            if (dopt.isPresent()) {
-                                Doctor d = dopt.get();
-                                if (doctorName == null || doctorName.isBlank()) doctorName = d.getFullName();
-                                if (specialization == null || specialization.isBlank()) specialization = d.getSpecialization();
-                            }
-                        }
-                    } catch (Exception ex) {}
-                    Map<String,Object> m = new HashMap<>();
-                    m.put("id", s.getId());
-                    m.put("doctorUserId", s.getDoctorUserId());
-                    m.put("doctorName", doctorName);
-                    m.put("specialization", specialization);
-                    m.put("date", s.getDate().toString());
-                    m.put("slots", active);
-                    out.add(m);
+                List<ScheduleSlot> active = new ArrayList<>();
+                for (ScheduleSlot slot : slotsBySchedule.getOrDefault(s.getId(), List.of())) {
+                    boolean held = slot.getReservedUntil() != null && slot.getReservedUntil().isAfter(now);
+                    if (Boolean.TRUE.equals(slot.getActive()) && !held) active.add(slot);
                 }
+                if (!active.isEmpty()) out.add(toView(s, active, doctors));
             }
             return ResponseEntity.ok(Map.of("success", true, "data", out));
         } catch (Exception e) {
@@ -148,31 +145,76 @@ public class DoctorScheduleController {
         }
     }
 
-    // Toggle a slot active/disabled
+    // Filtered, paginated availability from today on; pass nextCursor back as cursor for the next page
+    @GetMapping("/search")
+    public ResponseEntity<?> searchAvailability(@RequestParam(required = false) String specialization,
+                                                @RequestParam(required = false) String city,
+                                                @RequestParam(required = false) Double maxFee,
+                                                @RequestParam(required = false) String from,
+                                                @RequestParam(required = false) String to,
+                                                @RequestParam(required = false) String cursor,
+                                                @RequestParam(required = false) Integer limit) {
+        AvailabilitySearchService.Filter filter = new AvailabilitySearchService.Filter();
+        filter.specialization = specialization;
+        filter.city = city;
+        filter.maxFee = maxFee;
+        filter.from = from;
+        filter.to = to;
+        filter.cursor = cursor;
+        filter.limit = limit;
+        try {
+            AvailabilitySearchService.Page page = availabilitySearch.search(filter);
+            Map<String,Object> data = new HashMap<>();
+            data.put("items", page.items);
+            data.put("nextCursor", page.nextCursor);
+            return ResponseEntity.ok(Map.of("success", true, "data", data));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        }
+    }
+
+    // Live slot changes instead of polling /available; EventSource resumes via Last-Event-ID
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamSlotChanges(@RequestParam(required = false) Long doctorUserId,
+                                                        @RequestParam(required = false) String specialization,
+                                                        @RequestParam(required = false) String from,
+                                                        @RequestParam(required = false) String to,
+                                                        @RequestParam(required = false) String lastEventId,
+                                                        @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader) {
+        SlotEventFeed.Filter filter = new SlotEventFeed.Filter();
+        filter.doctorUserId = doctorUserId;
+        filter.specialization = specialization == null || specialization.isBlank() ? null : specialization;
+        // an id the feed did not issue is answered with a "reset" event, not an error
+        String resumeFrom = lastEventIdHeader != null && !lastEventIdHeader.isBlank() ? lastEventIdHeader : lastEventId;
+        try {
+            filter.from = from == null || from.isBlank() ? null : LocalDate.parse(from);
+            filter.to = to == null || to.isBlank() ? null : LocalDate.parse(to);
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid date");
+        }
+        SseEmitter emitter = slotEvents.subscribe(filter, resumeFrom);
+        if (emitter == null) throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many subscribers");
+        return ResponseEntity.ok().header("Cache-Control", "no-cache").header("X-Accel-Buffering", "no").body(emitter);
+    }
+
+    // Toggle a slot active/disabled; with "version" (as last read) it only applies if the slot is unchanged since
     @PatchMapping("/{scheduleId}/slots/{slotId}")
     public ResponseEntity<?> toggleSlot(@PathVariable Long scheduleId, @PathVariable String slotId, @RequestBody Map<String,Object> body) {
         try {
             Optional<DoctorSchedule> opt = scheduleRepository.findById(scheduleId);
             if (opt.isEmpty()) return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Schedule not found"));
-            DoctorSchedule s = opt.get();
-            List<SlotDTO> slots = mapper.readValue(s.getSlotsJson(), new TypeReference<List<SlotDTO>>(){});
-            boolean changed = false;
-            for (SlotDTO slot : slots) {
-                if (slot.id.equals(slotId)) {
-                    // if body contains active, set it; otherwise toggle
-                    if (body != null && body.containsKey("active")) {
-                        slot.active = Boolean.parseBoolean(body.get("active").toString());
-                    } else {
-                        slot.active = !slot.active;
-                    }
-                    changed = true;
-                    break;
-                }
+            // if body contains active, set it; otherwise toggle
+            Boolean active = body != null && body.containsKey("active") ? Boolean.parseBoolean(body.get("active").toString()) : null;
+            Outcome outcome = slotService.setActive(scheduleId, slotId, active, expectedVersion(body));
+            if (outcome == Outcome.CONFLICT) return changedConcurrently();
+            if (outcome == Outcome.BOOKED) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(Map.of("success", false, "message", "The slot has a booked appointment; cancel or reschedule it first"));
             }
-            if (!changed) return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Slot not found"));
-            s.setSlotsJson(mapper.writeValueAsString(slots));
-            scheduleRepository.save(s);
-            return ResponseEntity.ok(Map.of("success", true, "data", s));
+            if (outcome != Outcome.OK) {
+                return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Slot not found"));
+            }
+            return ResponseEntity.ok(Map.of("success", true, "data", toView(opt.get(), slotService.slotsFor(scheduleId))));
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
@@ -185,22 +227,13 @@ public class DoctorScheduleController {
         try {
             Optional<DoctorSchedule> opt = scheduleRepository.findById(scheduleId);
             if (opt.isEmpty()) return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Schedule not found"));
-            DoctorSchedule s = opt.get();
-            List<SlotDTO> slots = mapper.readValue(s.getSlotsJson(), new TypeReference<List<SlotDTO>>(){});
-            boolean changed = false;
-            for (SlotDTO slot : slots) {
-                if (slot.id.equals(slotId)) {
-                    if (body != null && body.containsKey("time")) {
-                        slot.time = body.get("time").toString();
-                        changed = true;
-                    }
-                    break;
-                }
+            Outcome outcome = body == null || !body.containsKey("time") ? Outcome.SLOT_NOT_FOUND
+                    : slotService.updateTime(scheduleId, slotId, body.get("time").toString(), expectedVersion(body));
+            if (outcome == Outcome.CONFLICT) return changedConcurrently();
+            if (outcome != Outcome.OK) {
+                return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Slot not found or no new time provided"));
             }
-            if (!changed) return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Slot not found or no new time provided"));
-            s.setSlotsJson(mapper.writeValueAsString(slots));
-            scheduleRepository.save(s);
-            return ResponseEntity.ok(Map.of("success", true, "data", s));
+            return ResponseEntity.ok(Map.of("success", true, "data", toView(opt.get(), slotService.slotsFor(scheduleId))));
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
@@ -209,21 +242,83 @@ public class DoctorScheduleController {
 
     // Delete a slot from a schedule
     @DeleteMapping("/{scheduleId}/slots/{slotId}")
-    public ResponseEntity<?> deleteSlot(@PathVariable Long scheduleId, @PathVariable String slotId) {
+    public ResponseEntity<?> deleteSlot(@PathVariable Long scheduleId, @PathVariable String slotId,
+                                        @RequestParam(required = false) Long version) {
         try {
             Optional<DoctorSchedule> opt = scheduleRepository.findById(scheduleId);
             if (opt.isEmpty()) return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Schedule not found"));
-            DoctorSchedule s = opt.get();
-            List<SlotDTO> slots = mapper.readValue(s.getSlotsJson(), new TypeReference<List<SlotDTO>>(){});
-            int before = slots.size();
-            slots.removeIf(slot -> slot.id.equals(slotId));
-            if (slots.size() == before) return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Slot not found"));
-            s.setSlotsJson(mapper.writeValueAsString(slots));
-            scheduleRepository.save(s);
-            return ResponseEntity.ok(Map.of("success", true, "data", s));
+            Outcome outcome = slotService.delete(scheduleId, slotId, version);
+            if (outcome == Outcome.CONFLICT) return changedConcurrently();
+            if (outcome != Outcome.OK) {
+                return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Slot not found"));
+            }
+            return ResponseEntity.ok(Map.of("success", true, "data", toView(opt.get(), slotService.slotsFor(scheduleId))));
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
         }
     }
+
+    private static Long expectedVersion(Map<String,Object> body) {
+        Object v = body == null ? null : body.get("version");
+        return v == null ? null : Long.valueOf(v.toString());
+    }
+
+    private static ResponseEntity<?> changedConcurrently() {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("success", false, "message", "The slot was changed in the meantime; reload and try again"));
+    }
+
+    private static List<Long> scheduleIds(List<DoctorSchedule> list) {
+        List<Long> ids = new ArrayList<>(list.size());
+        for (DoctorSchedule s : list) ids.add(s.getId());
+        return ids;
+    }
+
+    // Doctor summaries for the schedules missing a name or specialization, one batched lookup
+    private Map<Long, DoctorSummaryCache.Summary> doctorsFor(List<DoctorSchedule> list) {
+        Set<Long> ids = new HashSet<>();
+        for (DoctorSchedule s : list) {
+            if ((blank(s.getDoctorName()) || blank(s.getSpecialization())) && s.getDoctorUserId() != null) ids.add(s.getDoctorUserId());
+        }
+        if (ids.isEmpty()) return Map.of();
+        try {
+            return doctorSummaries.getAll(ids);
+        } catch (Exception ex) {
+            return Map.of();
+        }
+    }
+
+    private Map<String,Object> toView(DoctorSchedule s, List<ScheduleSlot> slots) {
+        return toView(s, slots, doctorsFor(List.of(s)));
+    }
+
+    // fill missing name/specialization from the doctor profile
+    private static Map<String,Object> toView(DoctorSchedule s, List<ScheduleSlot> slots, Map<Long, DoctorSummaryCache.Summary> doctors) {
+        String doctorName = s.getDoctorName();
+        String specialization = s.getSpecialization();
+        DoctorSummaryCache.Summary d = s.getDoctorUserId() == null ? null : doctors.get(s.getDoctorUserId());
+        if (d != null) {
+            if (blank(doctorName)) doctorName = d.fullName;
+            if (blank(specialization)) specialization = d.specialization;
+        }
+        return toView(s, slots, doctorName, specialization);
+    }
+
+    private static boolean blank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private static Map<String,Object> toView(DoctorSchedule s, List<ScheduleSlot> slots, String doctorName, String specialization) {
+        List<SlotCodec.Slot> slotViews = new ArrayList<>(slots.size());
+        for (ScheduleSlot slot : slots) slotViews.add(SlotCodec.Slot.of(slot));
+        Map<String,Object> m = new HashMap<>();
+        m.put("id", s.getId());
+        m.put("doctorUserId", s.getDoctorUserId());
+        m.put("doctorName", doctorName);
+        m.put("specialization", specialization);
+        m.put("date", s.getDate().toString());
+        m.put("slots", slotViews);
+        return m;
+    }
 }
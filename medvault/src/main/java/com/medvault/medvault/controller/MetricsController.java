@@ -0,0 +1,82 @@
+package com.medvault.medvault.controller;
+
+import com.medvault.medvault.security.AuthRateLimiter;
+import com.medvault.medvault.security.TokenRevocationList;
+import com.medvault.medvault.security.VerifiedTokenCache;
+import com.medvault.medvault.service.BookingTransactions;
+import com.medvault.medvault.service.DoctorSummaryCache;
+import com.medvault.medvault.service.IdempotencyService;
+import com.medvault.medvault.service.PasswordHasher;
+import com.medvault.medvault.service.ScheduleCounters;
+import com.medvault.medvault.service.ScheduleGenerator;
+import com.medvault.medvault.service.SlotEventFeed;
+import com.medvault.medvault.service.SlotHoldExpiryService;
+import com.medvault.medvault.service.SlotInventoryEngine;
+import com.medvault.medvault.service.SlotWriter;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Read-only runtime counters of the in-process caches and pools
+@RestController
+@RequestMapping("/api/admin/metrics")
+@CrossOrigin(origins = "http://localhost:3000")
+public class MetricsController {
+
+    private final VerifiedTokenCache tokenCache;
+    private final PasswordHasher passwordHasher;
+    private final AuthRateLimiter authRateLimiter;
+    private final TokenRevocationList revocationList;
+    private final SlotInventoryEngine slotEngine;
+    private final SlotHoldExpiryService slotHolds;
+    private final IdempotencyService idempotency;
+    private final ScheduleGenerator scheduleGenerator;
+    private final BookingTransactions bookingTransactions;
+    private final SlotEventFeed slotEvents;
+    private final ScheduleCounters scheduleCounters;
+    private final SlotWriter slotWriter;
+    private final DoctorSummaryCache doctorSummaries;
+
+    public MetricsController(VerifiedTokenCache tokenCache, PasswordHasher passwordHasher,
+                             AuthRateLimiter authRateLimiter, TokenRevocationList revocationList,
+                             SlotInventoryEngine slotEngine, SlotHoldExpiryService slotHolds,
+                             IdempotencyService idempotency, ScheduleGenerator scheduleGenerator,
+                             BookingTransactions bookingTransactions, SlotEventFeed slotEvents,
+                             ScheduleCounters scheduleCounters, SlotWriter slotWriter,
+                             DoctorSummaryCache doctorSummaries) {
+        this.tokenCache = tokenCache;
+        this.passwordHasher = passwordHasher;
+        this.authRateLimiter = authRateLimiter;
+        this.revocationList = revocationList;
+        this.slotEngine = slotEngine;
+        this.slotHolds = slotHolds;
+        this.idempotency = idempotency;
+        this.scheduleGenerator = scheduleGenerator;
+        this.bookingTransactions = bookingTransactions;
+        this.slotEvents = slotEvents;
+        this.scheduleCounters = scheduleCounters;
+        this.slotWriter = slotWriter;
+        this.doctorSummaries = doctorSummaries;
+    }
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> metrics() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("tokenCache", tokenCache.stats());
+        m.put("passwordHasher", passwordHasher.stats());
+        m.put("authRateLimiter", authRateLimiter.stats());
+        m.put("tokenRevocation", revocationList.stats());
+        m.put("slotEngine", slotEngine.stats());
+        m.put("slotHolds", slotHolds.stats());
+        m.put("idempotency", idempotency.stats());
+        m.put("scheduleGenerator", scheduleGenerator.stats());
+        m.put("bookingTransactions", bookingTransactions.stats());
+        m.put("slotEvents", slotEvents.stats());
+        m.put("scheduleCounters", scheduleCounters.stats());
+        m.put("slotWrites", slotWriter.stats());
+        m.put("doctorSummaries", doctorSummaries.stats());
+        return ResponseEntity.ok(m);
+    }
+}
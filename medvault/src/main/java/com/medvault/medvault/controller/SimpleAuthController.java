@@ -1,7 +1,10 @@
 package com.medvault.medvault.controller;
 
 import com.medvault.medvault.model.User;
+import com.medvault.medvault.security.AuthRateLimiter;
+import com.medvault.medvault.service.PasswordHashingBusyException;
 import com.medvault.medvault.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -10,23 +13,40 @@ import org.springframework.web.bind.annotation.*;
 @CrossOrigin(origins = "http://localhost:3000")
 public class SimpleAuthController {
     private final UserService userService;
+    private final AuthRateLimiter rateLimiter;
 
-    public SimpleAuthController(UserService userService) { this.userService = userService; }
+    public SimpleAuthController(UserService userService, AuthRateLimiter rateLimiter) {
+        this.userService = userService;
+        this.rateLimiter = rateLimiter;
+    }
+
+    @ExceptionHandler(PasswordHashingBusyException.class)
+    public ResponseEntity<?> busy(PasswordHashingBusyException ex) {
+        return ResponseEntity.status(503).header("Retry-After", "1").body(ex.getMessage());
+    }
 
     @PostMapping("/register")
-    public ResponseEntity<?> register(@RequestBody RegisterRequest req) {
+    public ResponseEntity<?> register(@RequestBody RegisterRequest req, HttpServletRequest request) {
+        long retryAfter = rateLimiter.check(request, req.email);
+        if (retryAfter > 0) return tooManyRequests(retryAfter);
         User created = userService.register(req.username, req.email, req.password, "USER");
         return ResponseEntity.ok(created.getId());
     }
 
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody LoginRequest req) {
+    public ResponseEntity<?> login(@RequestBody LoginRequest req, HttpServletRequest request) {
+        long retryAfter = rateLimiter.check(request, req.username);
+        if (retryAfter > 0) return tooManyRequests(retryAfter);
         return userService.findByUsername(req.username)
             .filter(u -> userService.checkPassword(u, req.password))
             .map(u -> ResponseEntity.ok("OK"))
             .orElse(ResponseEntity.status(401).body("Invalid credentials"));
     }
 
+    private ResponseEntity<?> tooManyRequests(long retryAfterSeconds) {
+        return ResponseEntity.status(429).header("Retry-After", String.valueOf(retryAfterSeconds)).body("Too many attempts");
+    }
+
     public static class RegisterRequest { public String username; public String email; public String password; }
     public static class LoginRequest { public String username; public String password; }
 }
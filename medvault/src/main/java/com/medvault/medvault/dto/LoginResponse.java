@@ -8,6 +8,7 @@ public class LoginResponse {
     private Long userId;
     private String identificationId;
     private String token; // JWT token
+    private String refreshToken; // opaque, exchanged at /api/auth/refresh for a new access token
 
     public LoginResponse(boolean success, String message, String role, String name, Long userId) {
         this.success = success;
@@ -63,4 +64,12 @@ public class LoginResponse {
     public String getToken() {
         return token;
     }
+
+    public String getRefreshToken() {
+        return refreshToken;
+    }
+
+    public void setRefreshToken(String refreshToken) {
+        this.refreshToken = refreshToken;
+    }
 }
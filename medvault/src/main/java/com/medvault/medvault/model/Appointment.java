@@ -6,8 +6,10 @@ import java.time.OffsetDateTime;
 @Entity
 @Table(name = "appointments")
 public class Appointment {
+    // pooled sequence (50 ids per nextval) so batch bookings insert in one JDBC batch
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "appointments_seq")
+    @SequenceGenerator(name = "appointments_seq", sequenceName = "appointments_pooled_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "patient_user_id")
@@ -24,6 +26,13 @@ public class Appointment {
     @Column(name = "slot_time")
     private String slotTime; // e.g., 18:00-18:30
 
+    // typed instants derived from date + slotTime (AppointmentTimes), used for range queries
+    @Column(name = "start_at")
+    private OffsetDateTime startAt;
+
+    @Column(name = "end_at")
+    private OffsetDateTime endAt;
+
     @Column(name = "schedule_id")
     private Long scheduleId;
 
@@ -58,6 +67,12 @@ public class Appointment {
     public String getSlotTime() { return slotTime; }
     public void setSlotTime(String slotTime) { this.slotTime = slotTime; }
 
+    public OffsetDateTime getStartAt() { return startAt; }
+    public void setStartAt(OffsetDateTime startAt) { this.startAt = startAt; }
+
+    public OffsetDateTime getEndAt() { return endAt; }
+    public void setEndAt(OffsetDateTime endAt) { this.endAt = endAt; }
+
     public Long getScheduleId() { return scheduleId; }
     public void setScheduleId(Long scheduleId) { this.scheduleId = scheduleId; }
 
@@ -21,8 +21,14 @@ public class DoctorSchedule {
 
     private LocalDate date;
 
-    @Column(columnDefinition = "text")
-    private String slotsJson; // JSON array of slots {id,time,active}
+    // slots live in schedule_slots (ScheduleSlot); the legacy slots_json column (jsonb, read-only) is no longer mapped
+
+    // maintained by ScheduleCounters, never written through the entity
+    @Column(name = "free_slot_count", insertable = false, updatable = false)
+    private Integer freeSlotCount;
+
+    @Column(name = "next_free_slot_time", insertable = false, updatable = false)
+    private String nextFreeSlotTime;
 
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -39,6 +45,7 @@ public class DoctorSchedule {
     public LocalDate getDate() { return date; }
     public void setDate(LocalDate date) { this.date = date; }
 
-    public String getSlotsJson() { return slotsJson; }
-    public void setSlotsJson(String slotsJson) { this.slotsJson = slotsJson; }
+    public Integer getFreeSlotCount() { return freeSlotCount; }
+
+    public String getNextFreeSlotTime() { return nextFreeSlotTime; }
 }
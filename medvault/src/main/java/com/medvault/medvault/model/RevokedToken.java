@@ -0,0 +1,37 @@
+package com.medvault.medvault.model;
+
+import jakarta.persistence.*;
+import java.time.OffsetDateTime;
+
+@Entity
+@Table(name = "revoked_tokens")
+public class RevokedToken {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true, length = 64)
+    private String jti;
+
+    @Column(name = "expires_at", nullable = false)
+    private OffsetDateTime expiresAt; // exp of the revoked access token
+
+    @Column(name = "revoked_at")
+    private OffsetDateTime revokedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        revokedAt = OffsetDateTime.now();
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getJti() { return jti; }
+    public void setJti(String jti) { this.jti = jti; }
+
+    public OffsetDateTime getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(OffsetDateTime expiresAt) { this.expiresAt = expiresAt; }
+
+    public OffsetDateTime getRevokedAt() { return revokedAt; }
+}
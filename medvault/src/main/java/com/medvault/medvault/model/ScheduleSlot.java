@@ -0,0 +1,74 @@
+package com.medvault.medvault.model;
+
+import jakarta.persistence.*;
+import java.time.OffsetDateTime;
+
+@Entity
+@Table(name = "schedule_slots",
+       uniqueConstraints = @UniqueConstraint(name = "uq_schedule_slots_schedule_key", columnNames = {"schedule_id", "slot_key"}))
+public class ScheduleSlot {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "schedule_id", nullable = false)
+    private Long scheduleId;
+
+    // the client-facing slot id (unique within a schedule)
+    @Column(name = "slot_key", nullable = false, length = 100)
+    private String slotKey;
+
+    @Column(name = "slot_time", length = 100)
+    private String slotTime; // e.g., 18:00-18:30
+
+    @Column(nullable = false)
+    private Integer position = 0;
+
+    @Column(nullable = false)
+    private Boolean active = true; // false once booked or disabled by the doctor
+
+    @Column(name = "reserved_until")
+    private OffsetDateTime reservedUntil;
+
+    @Column(name = "reserved_by")
+    private Long reservedBy;
+
+    // bumped by every write (SlotWriter, the engine flusher); clients send it back to make a change conditional
+    @Version
+    @Column(nullable = false)
+    private Long version = 0L;
+
+    // bumped by the in-memory booking engine's write-behind flusher only
+    @Column(name = "state_version", nullable = false)
+    private Long stateVersion = 0L;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getScheduleId() { return scheduleId; }
+    public void setScheduleId(Long scheduleId) { this.scheduleId = scheduleId; }
+
+    public String getSlotKey() { return slotKey; }
+    public void setSlotKey(String slotKey) { this.slotKey = slotKey; }
+
+    public String getSlotTime() { return slotTime; }
+    public void setSlotTime(String slotTime) { this.slotTime = slotTime; }
+
+    public Integer getPosition() { return position; }
+    public void setPosition(Integer position) { this.position = position; }
+
+    public Boolean getActive() { return active; }
+    public void setActive(Boolean active) { this.active = active; }
+
+    public OffsetDateTime getReservedUntil() { return reservedUntil; }
+    public void setReservedUntil(OffsetDateTime reservedUntil) { this.reservedUntil = reservedUntil; }
+
+    public Long getReservedBy() { return reservedBy; }
+    public void setReservedBy(Long reservedBy) { this.reservedBy = reservedBy; }
+
+    public Long getStateVersion() { return stateVersion; }
+    public void setStateVersion(Long stateVersion) { this.stateVersion = stateVersion; }
+
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
+}
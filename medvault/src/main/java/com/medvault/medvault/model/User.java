@@ -7,8 +7,10 @@ import java.time.OffsetDateTime;
 @Entity
 @Table(name = "users")
 public class User {
+    // pooled sequence (50 ids per nextval) so inserts can be JDBC-batched; IDENTITY forces one round trip per row
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, unique = true)
@@ -2,9 +2,32 @@ package com.medvault.medvault.repository;
 
 import com.medvault.medvault.model.Appointment;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import jakarta.persistence.LockModeType;
+
+import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Optional;
+
+public interface AppointmentRepository extends JpaRepository<Appointment, Long>, JpaSpecificationExecutor<Appointment> {
+    // listings are keyset-paginated through AppointmentListingService
+
+    // Taken before any slot row, per the lock order in BookingTransactions
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT a FROM Appointment a WHERE a.id = :id")
+    Optional<Appointment> findByIdForUpdate(@Param("id") Long id);
+
+    // Range scans on (doctor_user_id, start_at) / (patient_user_id, start_at); cancelled ones excluded
+    @Query("SELECT a FROM Appointment a WHERE a.doctorUserId = :doctorUserId AND a.startAt >= :from AND a.startAt < :to " +
+           "AND (a.status IS NULL OR a.status <> 'CANCELLED') ORDER BY a.startAt ASC, a.id ASC")
+    List<Appointment> findDoctorAgenda(@Param("doctorUserId") Long doctorUserId,
+                                       @Param("from") OffsetDateTime from, @Param("to") OffsetDateTime to);
 
-public interface AppointmentRepository extends JpaRepository<Appointment, Long> {
-    List<Appointment> findByPatientUserIdOrderByCreatedAtDesc(Long patientUserId);
-    List<Appointment> findByDoctorUserIdOrderByCreatedAtDesc(Long doctorUserId);
+    @Query("SELECT a FROM Appointment a WHERE a.patientUserId = :patientUserId AND a.startAt >= :from AND a.startAt < :to " +
+           "AND (a.status IS NULL OR a.status <> 'CANCELLED') ORDER BY a.startAt ASC, a.id ASC")
+    List<Appointment> findPatientAgenda(@Param("patientUserId") Long patientUserId,
+                                        @Param("from") OffsetDateTime from, @Param("to") OffsetDateTime to);
 }
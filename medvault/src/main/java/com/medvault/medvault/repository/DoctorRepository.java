@@ -7,6 +7,8 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -15,4 +17,8 @@ public interface DoctorRepository extends JpaRepository<Doctor, Long> {
     
     @Query("SELECT d FROM Doctor d WHERE d.user.id = :userId")
     Optional<Doctor> findByUserId(@Param("userId") Long userId);
+
+    // [userId, fullName, specialization, city, consultationFee] per doctor; see DoctorSummaryCache
+    @Query("SELECT d.user.id, d.fullName, d.specialization, d.city, d.consultationFee FROM Doctor d WHERE d.user.id IN :userIds")
+    List<Object[]> findSummariesByUserIds(@Param("userIds") Collection<Long> userIds);
 }
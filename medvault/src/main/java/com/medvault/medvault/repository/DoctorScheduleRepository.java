@@ -2,8 +2,23 @@ package com.medvault.medvault.repository;
 
 import com.medvault.medvault.model.DoctorSchedule;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
 import java.util.List;
 
 public interface DoctorScheduleRepository extends JpaRepository<DoctorSchedule, Long> {
     List<DoctorSchedule> findByDoctorUserIdOrderByDateAsc(Long doctorUserId);
+
+    List<DoctorSchedule> findByFreeSlotCountGreaterThanAndDateGreaterThanEqualOrderByDateAsc(Integer freeSlotCount, LocalDate date);
+
+    // Days created without a specialization take the profile's, so search can filter on the column
+    @Modifying
+    @Transactional
+    @Query("UPDATE DoctorSchedule s SET s.specialization = :specialization "
+            + "WHERE s.doctorUserId = :doctorUserId AND (s.specialization IS NULL OR TRIM(s.specialization) = '')")
+    int fillBlankSpecialization(@Param("doctorUserId") Long doctorUserId, @Param("specialization") String specialization);
 }
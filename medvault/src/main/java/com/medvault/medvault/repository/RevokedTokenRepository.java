@@ -0,0 +1,26 @@
+package com.medvault.medvault.repository;
+
+import com.medvault.medvault.model.RevokedToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, Long> {
+    boolean existsByJti(String jti);
+
+    // still-relevant revocations, for the startup rebuild
+    List<RevokedToken> findByExpiresAtAfter(OffsetDateTime now);
+
+    // revocations written by any node since the last poll
+    List<RevokedToken> findByIdGreaterThanOrderByIdAsc(Long id);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM RevokedToken r WHERE r.expiresAt < :now")
+    int deleteExpired(@Param("now") OffsetDateTime now);
+}
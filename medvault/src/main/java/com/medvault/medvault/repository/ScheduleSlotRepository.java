@@ -0,0 +1,16 @@
+package com.medvault.medvault.repository;
+
+import com.medvault.medvault.model.ScheduleSlot;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface ScheduleSlotRepository extends JpaRepository<ScheduleSlot, Long> {
+    List<ScheduleSlot> findByScheduleIdOrderByPositionAsc(Long scheduleId);
+
+    List<ScheduleSlot> findByScheduleIdInOrderByScheduleIdAscPositionAsc(Collection<Long> scheduleIds);
+
+    Optional<ScheduleSlot> findByScheduleIdAndSlotKey(Long scheduleId, String slotKey);
+}
@@ -0,0 +1,51 @@
+package com.medvault.medvault.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Throttles the login/signup endpoints per client IP and per email/username
+@Component
+public class AuthRateLimiter {
+
+    private final TokenBucketRateLimiter byIp;
+    private final TokenBucketRateLimiter byIdentity;
+    private final LongAdder limited = new LongAdder();
+
+    public AuthRateLimiter(@Value("${ratelimit.auth.ip.burst:20}") int ipBurst,
+                           @Value("${ratelimit.auth.ip.refill-per-minute:30}") double ipRefillPerMinute,
+                           @Value("${ratelimit.auth.identity.burst:5}") int identityBurst,
+                           @Value("${ratelimit.auth.identity.refill-per-minute:5}") double identityRefillPerMinute,
+                           @Value("${ratelimit.auth.max-keys:100000}") int maxKeys) {
+        this.byIp = new TokenBucketRateLimiter(ipBurst, ipRefillPerMinute, maxKeys);
+        this.byIdentity = new TokenBucketRateLimiter(identityBurst, identityRefillPerMinute, maxKeys);
+    }
+
+    /**
+     * Returns 0 when the attempt may proceed, otherwise the Retry-After value in seconds.
+     * identity may be null when the request carries no email/username.
+     */
+    public long check(HttpServletRequest request, String identity) {
+        long wait = byIp.tryAcquire(request.getRemoteAddr());
+        if (wait == 0 && identity != null && !identity.isBlank()) {
+            wait = byIdentity.tryAcquire(identity.trim().toLowerCase(Locale.ROOT));
+        }
+        if (wait == 0) return 0;
+        limited.increment();
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("ipKeys", byIp.size());
+        m.put("identityKeys", byIdentity.size());
+        m.put("limited", limited.sum());
+        return m;
+    }
+}
@@ -0,0 +1,45 @@
+package com.medvault.medvault.security;
+
+import io.jsonwebtoken.Claims;
+
+import java.util.Date;
+
+// Claims of a token whose signature and expiry have already been verified by JwtUtil.verify
+public class JwtClaims {
+    private final String subject;
+    private final Long userId;
+    private final String role;
+    private final String identificationId;
+    private final Date expiration;
+    private final String jti;
+
+    public JwtClaims(String subject, Long userId, String role, String identificationId, Date expiration, String jti) {
+        this.subject = subject;
+        this.userId = userId;
+        this.role = role;
+        this.identificationId = identificationId;
+        this.expiration = expiration;
+        this.jti = jti;
+    }
+
+    static JwtClaims from(Claims claims) {
+        return new JwtClaims(
+                claims.getSubject(),
+                claims.get("userId", Long.class),
+                claims.get("role", String.class),
+                claims.get("identificationId", String.class),
+                claims.getExpiration(),
+                claims.getId());
+    }
+
+    public String getSubject() { return subject; }
+    public Long getUserId() { return userId; }
+    public String getRole() { return role; }
+    public String getIdentificationId() { return identificationId; }
+    public Date getExpiration() { return expiration; }
+    public String getJti() { return jti; }
+
+    public boolean isExpired() {
+        return expiration != null && expiration.before(new Date());
+    }
+}
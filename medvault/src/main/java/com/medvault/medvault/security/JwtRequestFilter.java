@@ -6,6 +6,7 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -22,10 +23,23 @@ public class JwtRequestFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
     private final UserService userService;
+    private final UserStatusCache userStatusCache;
+    private final VerifiedTokenCache tokenCache;
+    private final TokenRevocationList revocationList;
 
-    public JwtRequestFilter(JwtUtil jwtUtil, UserService userService) {
+    // when true the principal is built from token claims and only the cached user status is checked
+    private final boolean statelessPrincipal;
+
+    public JwtRequestFilter(JwtUtil jwtUtil, UserService userService, UserStatusCache userStatusCache,
+                            VerifiedTokenCache tokenCache,
+                            TokenRevocationList revocationList,
+                            @Value("${jwt.stateless-principal:false}") boolean statelessPrincipal) {
         this.jwtUtil = jwtUtil;
         this.userService = userService;
+        this.userStatusCache = userStatusCache;
+        this.tokenCache = tokenCache;
+        this.revocationList = revocationList;
+        this.statelessPrincipal = statelessPrincipal;
     }
 
     @Override
@@ -34,25 +48,34 @@ public class JwtRequestFilter extends OncePerRequestFilter {
 
         final String authorizationHeader = request.getHeader("Authorization");
 
-        String username = null;
-        String jwt = null;
+        JwtClaims claims = null;
 
         if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
-            jwt = authorizationHeader.substring(7);
+            String jwt = authorizationHeader.substring(7);
             try {
-                username = jwtUtil.extractUsername(jwt);
+                // only tokens not seen before pay for signature verification
+                claims = tokenCache.get(jwt);
+                if (claims == null) {
+                    // single parse: signature and expiry are both checked here
+                    claims = jwtUtil.verify(jwt);
+                    tokenCache.put(jwt, claims);
+                }
+                // in-memory bloom check; the DB is only consulted on a bloom hit
+                if (revocationList.isRevoked(claims.getJti())) claims = null;
             } catch (Exception e) {
-                // Invalid token, continue without authentication
+                // Invalid or expired token, continue without authentication
             }
         }
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            Optional<User> userOpt = userService.findByEmail(username);
-            
-            if (userOpt.isPresent() && jwtUtil.validateToken(jwt, username)) {
+        if (claims != null && claims.getSubject() != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            Optional<User> userOpt = statelessPrincipal
+                    ? principalFromClaims(claims)
+                    : userService.findByEmail(claims.getSubject());
+
+            if (userOpt.isPresent()) {
                 User user = userOpt.get();
                 String role = user.getRoles();
-                
+
                 UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                         user,
                         null,
@@ -64,4 +87,16 @@ public class JwtRequestFilter extends OncePerRequestFilter {
         }
         chain.doFilter(request, response);
     }
+
+    // Detached User carrying only what the token asserts; never saved
+    private Optional<User> principalFromClaims(JwtClaims claims) {
+        if (claims.getUserId() == null || claims.getRole() == null) return Optional.empty();
+        if (userStatusCache.isBlocked(claims.getUserId())) return Optional.empty();
+        User user = new User();
+        user.setId(claims.getUserId());
+        user.setEmail(claims.getSubject());
+        user.setRoles(claims.getRole());
+        user.setIdentificationId(claims.getIdentificationId());
+        return Optional.of(user);
+    }
 }
@@ -1,6 +1,7 @@
 package com.medvault.medvault.security;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
@@ -11,18 +12,26 @@ import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 import java.util.function.Function;
 
 @Component
 public class JwtUtil {
 
-    @Value("${jwt.secret:MedVaultSecretKey2024SuperSecureJWTTokenForAuthentication}")
-    private String secret;
+    private final long jwtExpiration;
 
-    @Value("${jwt.expiration:86400000}") // 24 hours in milliseconds
-    private long jwtExpiration;
+    // key and parser are immutable and thread-safe, so build them once instead of per token
+    private final SecretKey signingKey;
+    private final JwtParser parser;
 
-    private SecretKey getSigningKey() {
+    public JwtUtil(@Value("${jwt.secret:MedVaultSecretKey2024SuperSecureJWTTokenForAuthentication}") String secret,
+                   @Value("${jwt.expiration:900000}") long jwtExpiration) { // 15 minutes in milliseconds
+        this.jwtExpiration = jwtExpiration;
+        this.signingKey = buildSigningKey(secret);
+        this.parser = Jwts.parser().verifyWith(signingKey).build();
+    }
+
+    static SecretKey buildSigningKey(String secret) {
         byte[] keyBytes = secret.getBytes(StandardCharsets.UTF_8);
         // Ensure key is at least 256 bits (32 bytes) for HS256
         if (keyBytes.length < 32) {
@@ -33,6 +42,15 @@ public class JwtUtil {
         return Keys.hmacShaKeyFor(keyBytes);
     }
 
+    /**
+     * Verifies signature and expiry in a single parse and returns the typed claims.
+     * Throws io.jsonwebtoken.JwtException (including ExpiredJwtException) or
+     * IllegalArgumentException when the token is not acceptable.
+     */
+    public JwtClaims verify(String token) {
+        return JwtClaims.from(extractAllClaims(token));
+    }
+
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
     }
@@ -55,15 +73,7 @@ public class JwtUtil {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-    }
-
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+        return parser.parseSignedClaims(token).getPayload();
     }
 
     public String generateToken(String username, Long userId, String role, String identificationId) {
@@ -78,21 +88,26 @@ public class JwtUtil {
         return Jwts.builder()
                 .claims(claims)
                 .subject(subject)
+                .id(UUID.randomUUID().toString()) // jti, the handle used to revoke this token
                 .issuedAt(new Date(System.currentTimeMillis()))
                 .expiration(new Date(System.currentTimeMillis() + jwtExpiration))
-                .signWith(getSigningKey())
+                .signWith(signingKey)
                 .compact();
     }
 
     public Boolean validateToken(String token, String username) {
-        final String extractedUsername = extractUsername(token);
-        return (extractedUsername.equals(username) && !isTokenExpired(token));
+        try {
+            // the parser already rejects expired tokens, so one parse covers both checks
+            JwtClaims claims = verify(token);
+            return claims.getSubject() != null && claims.getSubject().equals(username) && !claims.isExpired();
+        } catch (Exception e) {
+            return false;
+        }
     }
 
     public Boolean validateToken(String token) {
         try {
-            extractAllClaims(token);
-            return !isTokenExpired(token);
+            return !verify(token).isExpired();
         } catch (Exception e) {
             return false;
         }
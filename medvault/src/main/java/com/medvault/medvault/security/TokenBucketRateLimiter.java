@@ -0,0 +1,67 @@
+package com.medvault.medvault.security;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free keyed token bucket. Each bucket is a single AtomicLong holding its "theoretical
+ * arrival time" (the GCRA form of a token bucket): a request is admitted when that time is
+ * no more than the burst tolerance ahead of now, and admitting it pushes the time forward
+ * by one refill interval with a CAS. A bucket whose time is in the past is full again and
+ * carries no state, so idle keys can be dropped without changing any decision; the
+ * keyspace is swept that way whenever it reaches maxKeys.
+ */
+public class TokenBucketRateLimiter {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final int maxKeys;
+    private final long origin = System.nanoTime();
+
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    // shared by keys that arrive while the keyspace is full of active buckets
+    private final AtomicLong overflow = new AtomicLong();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    public TokenBucketRateLimiter(int burst, double refillPerMinute, int maxKeys) {
+        if (burst < 1 || refillPerMinute <= 0) throw new IllegalArgumentException("burst and refill rate must be positive");
+        this.intervalNanos = (long) (TimeUnit.MINUTES.toNanos(1) / refillPerMinute);
+        this.toleranceNanos = intervalNanos * (burst - 1);
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Takes one token for the key. Returns 0 when the request is allowed, otherwise the
+     * number of nanoseconds until a token becomes available.
+     */
+    public long tryAcquire(String key) {
+        long now = System.nanoTime() - origin;
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxKeys) sweep(now);
+            bucket = buckets.size() >= maxKeys ? overflow : buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+        while (true) {
+            long tat = bucket.get();
+            long base = Math.max(tat, now);
+            long wait = base - now - toleranceNanos;
+            if (wait > 0) return wait;
+            if (bucket.compareAndSet(tat, base + intervalNanos)) return 0;
+        }
+    }
+
+    private void sweep(long now) {
+        if (!sweeping.compareAndSet(false, true)) return;
+        try {
+            buckets.entrySet().removeIf(e -> e.getValue().get() <= now);
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+}
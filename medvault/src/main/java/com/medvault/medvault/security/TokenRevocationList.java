@@ -0,0 +1,111 @@
+package com.medvault.medvault.security;
+
+import com.medvault.medvault.model.RevokedToken;
+import com.medvault.medvault.repository.RevokedTokenRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Revoked access-token ids (jti). A bloom filter answers the common "not revoked" case
+ * without touching the database; a bloom hit is confirmed exactly against revoked_tokens
+ * and the answer remembered. The filter is rebuilt from the table at startup and
+ * periodically, and each node polls the table for rows written by other nodes.
+ */
+@Component
+public class TokenRevocationList {
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final int expectedRevocations;
+    private final double falsePositiveRate;
+    private final long pollOverlapIds;
+
+    private volatile BloomFilter bloom;
+    // exact answers for jtis the bloom filter matched: true = revoked, false = false positive
+    private final ConcurrentHashMap<String, Boolean> confirmed = new ConcurrentHashMap<>();
+    private long lastSeenId = 0;
+
+    private final LongAdder bloomHits = new LongAdder();
+    private final LongAdder dbChecks = new LongAdder();
+
+    public TokenRevocationList(RevokedTokenRepository revokedTokenRepository,
+                               @Value("${jwt.revocation.expected-revocations:100000}") int expectedRevocations,
+                               @Value("${jwt.revocation.false-positive-rate:0.001}") double falsePositiveRate,
+                               @Value("${jwt.revocation.poll-overlap-ids:1000}") long pollOverlapIds) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.expectedRevocations = expectedRevocations;
+        this.falsePositiveRate = falsePositiveRate;
+        this.pollOverlapIds = pollOverlapIds;
+        this.bloom = new BloomFilter(expectedRevocations, falsePositiveRate);
+    }
+
+    public boolean isRevoked(String jti) {
+        if (jti == null || !bloom.mightContain(jti)) return false;
+        bloomHits.increment();
+        return confirmed.computeIfAbsent(jti, k -> {
+            dbChecks.increment();
+            return revokedTokenRepository.existsByJti(k);
+        });
+    }
+
+    public void revoke(String jti, Instant expiresAt) {
+        if (jti == null || isRevoked(jti)) return;
+        RevokedToken rt = new RevokedToken();
+        rt.setJti(jti);
+        rt.setExpiresAt(OffsetDateTime.ofInstant(expiresAt, ZoneOffset.UTC));
+        revokedTokenRepository.save(rt);
+        bloom.put(jti);
+        confirmed.put(jti, true);
+    }
+
+    // Rebuild from the table, dropping revocations whose tokens have expired anyway
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${jwt.revocation.rebuild-ms:3600000}", initialDelayString = "${jwt.revocation.rebuild-ms:3600000}")
+    public synchronized void rebuild() {
+        OffsetDateTime now = OffsetDateTime.now();
+        revokedTokenRepository.deleteExpired(now);
+        List<RevokedToken> live = revokedTokenRepository.findByExpiresAtAfter(now);
+        BloomFilter fresh = new BloomFilter(Math.max(expectedRevocations, live.size() * 2), falsePositiveRate);
+        long maxId = lastSeenId;
+        for (RevokedToken rt : live) {
+            fresh.put(rt.getJti());
+            maxId = Math.max(maxId, rt.getId());
+        }
+        bloom = fresh;
+        confirmed.clear();
+        lastSeenId = maxId;
+    }
+
+    // Pick up revocations written by other nodes. Ids are handed out before commit, so a
+    // revocation that commits late can land below ids already seen; the last pollOverlapIds
+    // ids are read again to catch it (putting a jti twice is harmless).
+    @Scheduled(fixedDelayString = "${jwt.revocation.poll-ms:5000}")
+    public synchronized void poll() {
+        for (RevokedToken rt : revokedTokenRepository.findByIdGreaterThanOrderByIdAsc(Math.max(0, lastSeenId - pollOverlapIds))) {
+            bloom.put(rt.getJti());
+            confirmed.put(rt.getJti(), true);
+            lastSeenId = Math.max(lastSeenId, rt.getId());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("bloomBits", bloom.bitSize());
+        m.put("bloomHashes", bloom.hashFunctions());
+        m.put("confirmedEntries", confirmed.size());
+        m.put("bloomHits", bloomHits.sum());
+        m.put("dbChecks", dbChecks.sum());
+        return m;
+    }
+}
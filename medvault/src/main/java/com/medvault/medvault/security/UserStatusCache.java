@@ -0,0 +1,87 @@
+package com.medvault.medvault.security;
+
+import com.medvault.medvault.model.User;
+import com.medvault.medvault.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded LRU cache of each user's approval/status, used by the stateless JWT path so a
+ * request does not need a users lookup. Entries expire after a short TTL and are evicted
+ * immediately when an admin changes the user's status (see UserService.setApproval).
+ */
+@Component
+public class UserStatusCache {
+
+    private static final class Entry {
+        final boolean blocked;
+        final long loadedAt;
+
+        Entry(boolean blocked, long loadedAt) {
+            this.blocked = blocked;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final UserRepository userRepository;
+    private final long ttlMillis;
+    private final Map<Long, Entry> entries;
+    // bumped on every eviction so a load that raced with an admin change is not cached
+    private long evictions;
+
+    public UserStatusCache(UserRepository userRepository,
+                           @Value("${security.user-status-cache.max-entries:10000}") int maxEntries,
+                           @Value("${security.user-status-cache.ttl-seconds:60}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.ttlMillis = ttlSeconds * 1000L;
+        this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    // true when the account is missing, rejected or disabled
+    public boolean isBlocked(Long userId) {
+        long now = System.currentTimeMillis();
+        long seenEvictions;
+        synchronized (entries) {
+            Entry e = entries.get(userId);
+            if (e != null && now - e.loadedAt < ttlMillis) {
+                return e.blocked;
+            }
+            seenEvictions = evictions;
+        }
+        // load outside the lock so a slow query does not stall other requests
+        Optional<User> userOpt = userRepository.findById(userId);
+        boolean blocked = userOpt.isEmpty() || isBlockedStatus(userOpt.get().getStatus());
+        synchronized (entries) {
+            if (seenEvictions == evictions) {
+                entries.put(userId, new Entry(blocked, now));
+            }
+        }
+        return blocked;
+    }
+
+    public void evict(Long userId) {
+        synchronized (entries) {
+            entries.remove(userId);
+            evictions++;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    static boolean isBlockedStatus(String status) {
+        return "REJECTED".equalsIgnoreCase(status) || "DISABLED".equalsIgnoreCase(status);
+    }
+}
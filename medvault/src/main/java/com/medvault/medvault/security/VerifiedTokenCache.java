@@ -0,0 +1,113 @@
+package com.medvault.medvault.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Maps the SHA-256 digest of a raw bearer token to its already-verified claims so a token
+ * is only run through HMAC verification and claims decoding the first time it is seen.
+ * Entries never outlive the token's own exp claim. Only the digest is kept, never the token.
+ */
+@Component
+public class VerifiedTokenCache {
+
+    private static final class Entry {
+        final JwtClaims claims;
+        final long expiresAt;
+
+        Entry(JwtClaims claims, long expiresAt) {
+            this.claims = claims;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final ConcurrentHashMap<ByteBuffer, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public VerifiedTokenCache(@Value("${jwt.token-cache.max-entries:50000}") int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    // Returns the cached claims, or null when the token has not been verified yet or has expired
+    public JwtClaims get(String token) {
+        ByteBuffer key = digest(token);
+        Entry e = entries.get(key);
+        if (e == null) {
+            misses.increment();
+            return null;
+        }
+        if (e.expiresAt <= System.currentTimeMillis()) {
+            if (entries.remove(key, e)) evictions.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return e.claims;
+    }
+
+    public void put(String token, JwtClaims claims) {
+        if (claims.getExpiration() == null) return; // tokens without exp are never cached
+        long expiresAt = claims.getExpiration().getTime();
+        if (expiresAt <= System.currentTimeMillis()) return;
+        if (entries.size() >= maxEntries) makeRoom();
+        entries.put(digest(token), new Entry(claims, expiresAt));
+    }
+
+    public void invalidate(String token) {
+        if (entries.remove(digest(token)) != null) evictions.increment();
+    }
+
+    public void clear() {
+        int n = entries.size();
+        entries.clear();
+        evictions.add(n);
+    }
+
+    // Drop expired entries first; if the cache is still full, drop arbitrary entries down to 90%
+    private void makeRoom() {
+        long now = System.currentTimeMillis();
+        entries.forEach((k, e) -> {
+            if (e.expiresAt <= now && entries.remove(k, e)) evictions.increment();
+        });
+        int target = (int) (maxEntries * 0.9);
+        Iterator<ByteBuffer> it = entries.keySet().iterator();
+        while (entries.size() > target && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("size", entries.size());
+        m.put("maxEntries", maxEntries);
+        m.put("hits", hits.sum());
+        m.put("misses", misses.sum());
+        m.put("evictions", evictions.sum());
+        return m;
+    }
+
+    private static ByteBuffer digest(String token) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return ByteBuffer.wrap(md.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.medvault.medvault.service;
+
+import com.medvault.medvault.model.Appointment;
+import com.medvault.medvault.repository.AppointmentRepository;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Keyset (cursor) pages of a doctor's or patient's appointments, newest first. The cursor
+ * is the (createdAt, id) of the last row returned, so each page is an index range scan on
+ * (doctor_user_id|patient_user_id, created_at DESC, id DESC) rather than an OFFSET.
+ */
+@Service
+public class AppointmentListingService {
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 200;
+
+    public static class Filter {
+        public String status;
+        public String from; // YYYY-MM-DD, inclusive, on the appointment date
+        public String to;
+        public String cursor;
+        public Integer limit;
+    }
+
+    public static class Page {
+        public final List<Appointment> items;
+        public final String nextCursor; // null on the last page
+
+        Page(List<Appointment> items, String nextCursor) {
+            this.items = items;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id"));
+
+    private final AppointmentRepository appointmentRepository;
+
+    public AppointmentListingService(AppointmentRepository appointmentRepository) {
+        this.appointmentRepository = appointmentRepository;
+    }
+
+    public Page forDoctor(Long doctorUserId, Filter filter) {
+        return page("doctorUserId", doctorUserId, filter);
+    }
+
+    public Page forPatient(Long patientUserId, Filter filter) {
+        return page("patientUserId", patientUserId, filter);
+    }
+
+    private Page page(String ownerField, Long ownerId, Filter filter) {
+        int limit = filter.limit == null ? DEFAULT_LIMIT : Math.max(1, Math.min(filter.limit, MAX_LIMIT));
+        Cursor after = filter.cursor == null || filter.cursor.isBlank() ? null : Cursor.decode(filter.cursor);
+
+        Specification<Appointment> spec = (root, query, cb) -> {
+            List<Predicate> p = new ArrayList<>();
+            p.add(cb.equal(root.get(ownerField), ownerId));
+            if (filter.status != null && !filter.status.isBlank()) p.add(cb.equal(root.get("status"), filter.status.toUpperCase()));
+            if (filter.from != null && !filter.from.isBlank()) p.add(cb.greaterThanOrEqualTo(root.get("date"), filter.from));
+            if (filter.to != null && !filter.to.isBlank()) p.add(cb.lessThanOrEqualTo(root.get("date"), filter.to));
+            if (after != null) {
+                // (createdAt, id) < (after.createdAt, after.id); the first term bounds the index scan
+                p.add(cb.lessThanOrEqualTo(root.get("createdAt"), after.createdAt));
+                p.add(cb.or(
+                        cb.lessThan(root.get("createdAt"), after.createdAt),
+                        cb.and(cb.equal(root.get("createdAt"), after.createdAt), cb.lessThan(root.get("id"), after.id))));
+            }
+            return cb.and(p.toArray(new Predicate[0]));
+        };
+
+        // one extra row tells us whether there is a next page without a count query
+        List<Appointment> rows = appointmentRepository.findBy(spec, q -> q.sortBy(NEWEST_FIRST).limit(limit + 1).all());
+        if (rows.size() <= limit) return new Page(rows, null);
+        List<Appointment> items = new ArrayList<>(rows.subList(0, limit));
+        Appointment last = items.get(limit - 1);
+        return new Page(items, new Cursor(last.getCreatedAt(), last.getId()).encode());
+    }
+
+    static final class Cursor {
+        final OffsetDateTime createdAt;
+        final long id;
+
+        Cursor(OffsetDateTime createdAt, long id) {
+            this.createdAt = createdAt;
+            this.id = id;
+        }
+
+        String encode() {
+            String raw = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int bar = raw.lastIndexOf('|');
+                return new Cursor(OffsetDateTime.parse(raw.substring(0, bar)), Long.parseLong(raw.substring(bar + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+    }
+}
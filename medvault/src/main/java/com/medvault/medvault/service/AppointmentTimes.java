@@ -0,0 +1,60 @@
+package com.medvault.medvault.service;
+
+import com.medvault.medvault.model.Appointment;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Derives an appointment's start_at/end_at from its display strings, date "YYYY-MM-DD" and
+ * slotTime "HH:MM-HH:MM" (or "HH:MM", which gets the default duration), read in the clinic's
+ * time zone. Same rules as the V13 backfill; strings that do not parse leave both null.
+ */
+@Component
+public class AppointmentTimes {
+
+    private static final Pattern SLOT = Pattern.compile("^\\s*(\\d{1,2}):(\\d{2})(?:\\s*-\\s*(\\d{1,2}):(\\d{2}))?");
+
+    private final ZoneId zone;
+    private final Duration defaultDuration;
+
+    public AppointmentTimes(@Value("${appointments.time-zone:UTC}") String zone,
+                            @Value("${appointments.default-duration-minutes:30}") long defaultMinutes) {
+        this.zone = ZoneId.of(zone);
+        this.defaultDuration = Duration.ofMinutes(defaultMinutes);
+    }
+
+    public ZoneId zone() {
+        return zone;
+    }
+
+    public void fill(Appointment appt) {
+        OffsetDateTime[] range = parse(appt.getDate(), appt.getSlotTime());
+        appt.setStartAt(range == null ? null : range[0]);
+        appt.setEndAt(range == null ? null : range[1]);
+    }
+
+    OffsetDateTime[] parse(String date, String slotTime) {
+        if (date == null || slotTime == null) return null;
+        Matcher m = SLOT.matcher(slotTime);
+        if (!m.find()) return null;
+        try {
+            LocalDate day = LocalDate.parse(date.trim());
+            LocalTime from = LocalTime.of(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)));
+            ZonedDateTime start = day.atTime(from).atZone(zone);
+            ZonedDateTime end;
+            if (m.group(3) == null) {
+                end = start.plus(defaultDuration);
+            } else {
+                end = day.atTime(LocalTime.of(Integer.parseInt(m.group(3)), Integer.parseInt(m.group(4)))).atZone(zone);
+                if (!end.isAfter(start)) end = end.plusDays(1); // e.g. 23:30-00:00
+            }
+            return new OffsetDateTime[] {start.toOffsetDateTime(), end.toOffsetDateTime()};
+        } catch (DateTimeException | NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.medvault.medvault.service;
+
+import com.medvault.medvault.model.ScheduleSlot;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.*;
+
+/**
+ * Doctor-days with at least one open slot, filtered by specialization, date range, city and
+ * maximum fee, in (date, id) keyset pages. The date range starts no earlier than today and
+ * only days with free_slot_count > 0 qualify, so the scan walks the partial "has capacity"
+ * indexes from today's entries and never reads past or fully booked days. The EXISTS on
+ * schedule_slots then only drops days whose remaining slots are all held. Doctor filters
+ * come from the one doctors row joined per candidate day.
+ */
+@Service
+public class AvailabilitySearchService {
+
+    public static final int DEFAULT_LIMIT = 20;
+    public static final int MAX_LIMIT = 100;
+    public static final int MAX_RANGE_DAYS = 92;
+
+    public static class Filter {
+        public String specialization;
+        public String city;
+        public Double maxFee;
+        public String from; // YYYY-MM-DD, inclusive; never before today
+        public String to;
+        public String cursor;
+        public Integer limit;
+    }
+
+    public static class Page {
+        public final List<Map<String, Object>> items;
+        public final String nextCursor; // null on the last page
+
+        Page(List<Map<String, Object>> items, String nextCursor) {
+            this.items = items;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ScheduleSlotService slotService;
+    private final AppointmentTimes appointmentTimes;
+
+    public AvailabilitySearchService(JdbcTemplate jdbcTemplate, ScheduleSlotService slotService,
+                                     AppointmentTimes appointmentTimes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.slotService = slotService;
+        this.appointmentTimes = appointmentTimes;
+    }
+
+    public Page search(Filter filter) {
+        int limit = filter.limit == null ? DEFAULT_LIMIT : Math.max(1, Math.min(filter.limit, MAX_LIMIT));
+        LocalDate today = LocalDate.now(appointmentTimes.zone());
+        LocalDate from = blank(filter.from) ? today : LocalDate.parse(filter.from.trim());
+        if (from.isBefore(today)) from = today;
+        LocalDate to = blank(filter.to) ? from.plusDays(30) : LocalDate.parse(filter.to.trim());
+        if (to.isAfter(from.plusDays(MAX_RANGE_DAYS))) throw new IllegalArgumentException("Date range is limited to " + MAX_RANGE_DAYS + " days");
+
+        StringBuilder sql = new StringBuilder("SELECT s.id, s.doctor_user_id, s.date, "
+                + "COALESCE(NULLIF(s.doctor_name, ''), d.full_name) AS doctor_name, "
+                + "COALESCE(NULLIF(s.specialization, ''), d.specialization) AS specialization, "
+                + "s.free_slot_count, s.next_free_slot_time, d.city, d.consultation_fee, d.clinic_hospital_name "
+                + "FROM doctor_schedules s LEFT JOIN doctors d ON d.user_id = s.doctor_user_id "
+                + "WHERE s.free_slot_count > 0 AND s.date >= ? AND s.date <= ?");
+        List<Object> args = new ArrayList<>();
+        args.add(Date.valueOf(from));
+        args.add(Date.valueOf(to));
+        if (!blank(filter.specialization)) {
+            // blank schedule specializations are filled from the profile (V20, DoctorService), so this
+            // matches the displayed value and keeps idx_doctor_schedules_spec_free usable
+            sql.append(" AND lower(s.specialization) = lower(?)");
+            args.add(filter.specialization.trim());
+        }
+        if (!blank(filter.city)) {
+            sql.append(" AND lower(d.city) = lower(?)");
+            args.add(filter.city.trim());
+        }
+        if (filter.maxFee != null) {
+            sql.append(" AND d.consultation_fee <= ?");
+            args.add(filter.maxFee);
+        }
+        if (!blank(filter.cursor)) {
+            Cursor after = Cursor.decode(filter.cursor);
+            sql.append(" AND (s.date, s.id) > (?, ?)");
+            args.add(Date.valueOf(after.date));
+            args.add(after.id);
+        }
+        sql.append(" AND EXISTS (SELECT 1 FROM schedule_slots sl WHERE sl.schedule_id = s.id AND sl.active = true "
+                + "AND (sl.reserved_until IS NULL OR sl.reserved_until < CURRENT_TIMESTAMP))");
+        // one extra row tells us whether there is a next page
+        sql.append(" ORDER BY s.date, s.id LIMIT ?");
+        args.add(limit + 1);
+
+        List<Map<String, Object>> rows = jdbcTemplate.query(sql.toString(), (rs, n) -> {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("id", rs.getLong("id"));
+            m.put("doctorUserId", rs.getObject("doctor_user_id") == null ? null : rs.getLong("doctor_user_id"));
+            m.put("doctorName", rs.getString("doctor_name"));
+            m.put("specialization", rs.getString("specialization"));
+            m.put("date", rs.getDate("date").toLocalDate().toString());
+            m.put("freeSlotCount", rs.getInt("free_slot_count"));
+            m.put("nextFreeSlotTime", rs.getString("next_free_slot_time"));
+            m.put("city", rs.getString("city"));
+            m.put("consultationFee", rs.getObject("consultation_fee") == null ? null : rs.getDouble("consultation_fee"));
+            m.put("clinicHospitalName", rs.getString("clinic_hospital_name"));
+            return m;
+        }, args.toArray());
+
+        String nextCursor = null;
+        if (rows.size() > limit) {
+            rows = new ArrayList<>(rows.subList(0, limit));
+            Map<String, Object> last = rows.get(limit - 1);
+            nextCursor = new Cursor(LocalDate.parse((String) last.get("date")), (Long) last.get("id")).encode();
+        }
+
+        // open slots of the page's days only, one query
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) ids.add((Long) row.get("id"));
+        Map<Long, List<ScheduleSlot>> slots = slotService.slotsFor(ids);
+        OffsetDateTime now = OffsetDateTime.now();
+        for (Map<String, Object> row : rows) {
+            List<SlotCodec.Slot> open = new ArrayList<>();
+            for (ScheduleSlot slot : slots.getOrDefault((Long) row.get("id"), List.of())) {
+                boolean held = slot.getReservedUntil() != null && slot.getReservedUntil().isAfter(now);
+                if (Boolean.TRUE.equals(slot.getActive()) && !held) open.add(SlotCodec.Slot.of(slot));
+            }
+            row.put("slots", open);
+        }
+        return new Page(rows, nextCursor);
+    }
+
+    private static boolean blank(String s) {
+        return s == null || s.isBlank();
+    }
+
+    static final class Cursor {
+        final LocalDate date;
+        final long id;
+
+        Cursor(LocalDate date, long id) {
+            this.date = date;
+            this.id = id;
+        }
+
+        String encode() {
+            String raw = date + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int bar = raw.lastIndexOf('|');
+                return new Cursor(LocalDate.parse(raw.substring(0, bar)), Long.parseLong(raw.substring(bar + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+    }
+}
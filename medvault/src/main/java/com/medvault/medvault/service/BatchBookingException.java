@@ -0,0 +1,17 @@
+package com.medvault.medvault.service;
+
+import java.util.List;
+
+// Thrown when any slot of a batch booking cannot be booked; the whole batch is rolled back
+public class BatchBookingException extends RuntimeException {
+    private final List<BatchBookingService.Failure> failures;
+
+    public BatchBookingException(List<BatchBookingService.Failure> failures) {
+        super(failures.size() + " of the requested slots could not be booked");
+        this.failures = failures;
+    }
+
+    public List<BatchBookingService.Failure> getFailures() {
+        return failures;
+    }
+}
@@ -0,0 +1,125 @@
+package com.medvault.medvault.service;
+
+import com.medvault.medvault.model.Appointment;
+import com.medvault.medvault.model.DoctorSchedule;
+import com.medvault.medvault.model.ScheduleSlot;
+import com.medvault.medvault.repository.AppointmentRepository;
+import com.medvault.medvault.repository.DoctorScheduleRepository;
+import com.medvault.medvault.service.ScheduleSlotService.Outcome;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+/**
+ * Books several slots for one patient (e.g. a course of physiotherapy sessions) in a single
+ * transaction: either every slot is booked and every appointment inserted, or nothing is.
+ * Slot rows are locked in (scheduleId, slotId) order before any is claimed, so overlapping
+ * batches and reschedules always lock the same rows in the same order and cannot deadlock.
+ */
+@Service
+public class BatchBookingService {
+
+    public static final int MAX_ITEMS = 50;
+
+    public static class Item {
+        public Long scheduleId;
+        public String slotId;
+    }
+
+    public static class Failure {
+        public final Long scheduleId;
+        public final String slotId;
+        public final String reason;
+
+        Failure(Long scheduleId, String slotId, String reason) {
+            this.scheduleId = scheduleId;
+            this.slotId = slotId;
+            this.reason = reason;
+        }
+    }
+
+    private static final Comparator<Item> LOCK_ORDER =
+            Comparator.comparing((Item i) -> i.scheduleId).thenComparing(i -> i.slotId);
+
+    private final ScheduleSlotService slotService;
+    private final DoctorScheduleRepository scheduleRepository;
+    private final AppointmentRepository appointmentRepository;
+    private final AppointmentTimes appointmentTimes;
+
+    public BatchBookingService(ScheduleSlotService slotService, DoctorScheduleRepository scheduleRepository,
+                               AppointmentRepository appointmentRepository, AppointmentTimes appointmentTimes) {
+        this.slotService = slotService;
+        this.scheduleRepository = scheduleRepository;
+        this.appointmentRepository = appointmentRepository;
+        this.appointmentTimes = appointmentTimes;
+    }
+
+    // Throws BatchBookingException (rolling the transaction back) if any slot cannot be booked
+    @Transactional
+    public List<Appointment> bookAll(Long patientUserId, List<Item> items) {
+        if (items == null || items.isEmpty()) throw new IllegalArgumentException("No slots given");
+        if (items.size() > MAX_ITEMS) throw new IllegalArgumentException("At most " + MAX_ITEMS + " slots per batch");
+        Set<String> seen = new HashSet<>();
+        for (Item i : items) {
+            if (i.scheduleId == null || i.slotId == null) throw new IllegalArgumentException("Each slot needs scheduleId and slotId");
+            if (!seen.add(i.scheduleId + "/" + i.slotId)) throw new IllegalArgumentException("Slot " + i.slotId + " listed twice");
+        }
+        List<Item> ordered = new ArrayList<>(items);
+        ordered.sort(LOCK_ORDER);
+
+        // doctor, date and slot time come from the schedule, not from the client; two queries for the lot
+        Set<Long> scheduleIds = new TreeSet<>();
+        for (Item i : ordered) scheduleIds.add(i.scheduleId);
+        Map<Long, DoctorSchedule> schedules = new HashMap<>();
+        for (DoctorSchedule s : scheduleRepository.findAllById(scheduleIds)) schedules.put(s.getId(), s);
+        Map<Long, List<ScheduleSlot>> slots = slotService.slotsFor(scheduleIds);
+
+        // every slot row locked up front, in the global order, in one round trip
+        List<ScheduleSlotService.SlotRef> refs = new ArrayList<>(ordered.size());
+        for (Item i : ordered) refs.add(new ScheduleSlotService.SlotRef(i.scheduleId, i.slotId));
+        slotService.lockInOrder(refs);
+
+        List<Failure> failures = new ArrayList<>();
+        List<Appointment> appointments = new ArrayList<>(ordered.size());
+        for (Item i : ordered) {
+            DoctorSchedule schedule = schedules.get(i.scheduleId);
+            Outcome outcome = schedule == null ? Outcome.SCHEDULE_NOT_FOUND : slotService.book(i.scheduleId, i.slotId, patientUserId);
+            if (outcome != Outcome.OK) {
+                failures.add(new Failure(i.scheduleId, i.slotId, reason(outcome)));
+                continue; // keep going so the client learns about every unavailable slot at once
+            }
+            Appointment appt = new Appointment();
+            appt.setPatientUserId(patientUserId);
+            appt.setDoctorUserId(schedule.getDoctorUserId());
+            appt.setDoctorName(schedule.getDoctorName());
+            appt.setDate(schedule.getDate() == null ? null : schedule.getDate().toString());
+            appt.setSlotTime(slotTime(slots.get(i.scheduleId), i.slotId));
+            appt.setStatus("CONFIRMED");
+            appt.setScheduleId(i.scheduleId);
+            appt.setSlotId(i.slotId);
+            appointmentTimes.fill(appt);
+            appointments.add(appt);
+        }
+
+        // all or nothing: the exception rolls back the slots this batch did claim
+        if (!failures.isEmpty()) throw new BatchBookingException(failures);
+        return appointmentRepository.saveAll(appointments);
+    }
+
+    private static String slotTime(List<ScheduleSlot> slots, String slotId) {
+        if (slots == null) return null;
+        for (ScheduleSlot s : slots) if (s.getSlotKey().equals(slotId)) return s.getSlotTime();
+        return null;
+    }
+
+    private static String reason(Outcome outcome) {
+        switch (outcome) {
+            case SCHEDULE_NOT_FOUND: return "Schedule not found";
+            case SLOT_NOT_FOUND: return "Slot not found";
+            case HELD: return "Slot temporarily reserved";
+            case CONFLICT: return "Slot is busy, please retry";
+            default: return "Slot not available";
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.medvault.medvault.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Transactions for booking operations that lock more than one row (reschedule, batch booking).
+ * Each attempt runs with a bounded lock_timeout, so a stuck lock costs at most that long
+ * instead of waiting on the deadlock detector. Deadlock and serialization failures are
+ * retried in a fresh transaction after a jittered exponential backoff; a lock timeout is not,
+ * since it means the rows are genuinely busy.
+ *
+ * Lock order across these operations: the appointment row first, then slot rows by
+ * (schedule_id, slot_key); see ScheduleSlotService.lockInOrder.
+ */
+@Component
+public class BookingTransactions {
+
+    private static final String DEADLOCK = "40P01";
+    private static final String SERIALIZATION_FAILURE = "40001";
+    private static final String LOCK_NOT_AVAILABLE = "55P03";
+    private static final Set<String> RETRYABLE = Set.of(DEADLOCK, SERIALIZATION_FAILURE);
+
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final long lockTimeoutMillis;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final long maxBackoffMillis;
+
+    private final LongAdder transactions = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder deadlocks = new LongAdder();
+    private final LongAdder serializationFailures = new LongAdder();
+    private final LongAdder lockTimeouts = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    public BookingTransactions(TransactionTemplate transactionTemplate, JdbcTemplate jdbcTemplate,
+                               @Value("${booking.locks.timeout-ms:2000}") long lockTimeoutMillis,
+                               @Value("${booking.locks.max-attempts:4}") int maxAttempts,
+                               @Value("${booking.locks.backoff-ms:20}") long backoffMillis,
+                               @Value("${booking.locks.max-backoff-ms:400}") long maxBackoffMillis) {
+        this.transactionTemplate = transactionTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.lockTimeoutMillis = lockTimeoutMillis;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMillis = backoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public <T> T execute(TransactionCallback<T> action) {
+        transactions.increment();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> {
+                    // SET LOCAL ends with the transaction; the value is a configured number, not input
+                    if (lockTimeoutMillis > 0) jdbcTemplate.execute("SET LOCAL lock_timeout = '" + lockTimeoutMillis + "ms'");
+                    return action.doInTransaction(status);
+                });
+            } catch (RuntimeException e) {
+                String state = sqlState(e);
+                if (LOCK_NOT_AVAILABLE.equals(state)) lockTimeouts.increment();
+                if (state == null || !RETRYABLE.contains(state)) throw e;
+                (DEADLOCK.equals(state) ? deadlocks : serializationFailures).increment();
+                if (attempt >= maxAttempts) {
+                    exhausted.increment();
+                    throw e;
+                }
+                retries.increment();
+                backoff(attempt);
+            }
+        }
+    }
+
+    // "Full jitter": uniformly random up to the exponential bound, so retried rivals spread out
+    private void backoff(int attempt) {
+        long bound = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt - 1, 20));
+        if (bound <= 0) return;
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Lock contention that outlived the retries (or a lock timeout); callers answer "busy, retry"
+    public static boolean isContention(Throwable e) {
+        String state = sqlState(e);
+        return state != null && (RETRYABLE.contains(state) || LOCK_NOT_AVAILABLE.equals(state));
+    }
+
+    // For catch-all blocks inside execute(): contention must reach the retry loop, not become a 400
+    public static void rethrowIfContention(Exception e) {
+        if (!isContention(e)) return;
+        if (e instanceof RuntimeException) throw (RuntimeException) e;
+        throw new IllegalStateException(e);
+    }
+
+    static String sqlState(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException && ((SQLException) t).getSQLState() != null) {
+                return ((SQLException) t).getSQLState();
+            }
+            if (t.getCause() == t) break;
+        }
+        return null;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("lockTimeoutMs", lockTimeoutMillis);
+        m.put("transactions", transactions.sum());
+        m.put("retries", retries.sum());
+        m.put("deadlocks", deadlocks.sum());
+        m.put("serializationFailures", serializationFailures.sum());
+        m.put("lockTimeouts", lockTimeouts.sum());
+        m.put("retriesExhausted", exhausted.sum());
+        return m;
+    }
+}
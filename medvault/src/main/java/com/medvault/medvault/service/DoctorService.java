@@ -3,6 +3,7 @@ package com.medvault.medvault.service;
 import com.medvault.medvault.model.Doctor;
 import com.medvault.medvault.model.User;
 import com.medvault.medvault.repository.DoctorRepository;
+import com.medvault.medvault.repository.DoctorScheduleRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -15,8 +16,29 @@ public class DoctorService {
     @Autowired
     private DoctorRepository doctorRepository;
 
+    @Autowired
+    private DoctorSummaryCache doctorSummaries;
+
+    @Autowired
+    private DoctorScheduleRepository scheduleRepository;
+
+    @Autowired
+    private SlotEventFeed slotEvents;
+
+    // profile save and verification both come through here; schedule listings see the change at once
     public Doctor createOrUpdateDoctor(Doctor doctor) {
-        return doctorRepository.save(doctor);
+        Doctor saved = doctorRepository.save(doctor);
+        if (saved.getUser() != null) {
+            doctorSummaries.evict(saved.getUser().getId());
+            String specialization = saved.getSpecialization();
+            if (specialization != null && !specialization.isBlank()) {
+                if (scheduleRepository.fillBlankSpecialization(saved.getUser().getId(), specialization) > 0) {
+                    // the feed filters events on the specialization it cached for each schedule
+                    slotEvents.evictDoctor(saved.getUser().getId());
+                }
+            }
+        }
+        return saved;
     }
 
     public Optional<Doctor> getDoctorById(Long id) {
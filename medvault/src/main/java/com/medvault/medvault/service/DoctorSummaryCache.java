@@ -0,0 +1,126 @@
+package com.medvault.medvault.service;
+
+import com.medvault.medvault.repository.DoctorRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of the doctor fields that schedule listings show (name, specialization,
+ * city, fee), keyed by the doctor's user id. getAll resolves every miss of a listing with one
+ * query, so enriching hundreds of schedules costs at most one doctors lookup. Users without a
+ * doctor profile are cached too, as a summary with all fields null. Entries expire after a
+ * TTL and are evicted when the profile is saved (see DoctorService.createOrUpdateDoctor).
+ */
+@Component
+public class DoctorSummaryCache {
+
+    public static final class Summary {
+        public final Long userId;
+        public final String fullName;
+        public final String specialization;
+        public final String city;
+        public final Double consultationFee;
+
+        Summary(Long userId, String fullName, String specialization, String city, Double consultationFee) {
+            this.userId = userId;
+            this.fullName = fullName;
+            this.specialization = specialization;
+            this.city = city;
+            this.consultationFee = consultationFee;
+        }
+    }
+
+    private static final class Entry {
+        final Summary summary;
+        final long loadedAt;
+
+        Entry(Summary summary, long loadedAt) {
+            this.summary = summary;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final DoctorRepository doctorRepository;
+    private final long ttlMillis;
+    private final Map<Long, Entry> entries;
+    // bumped on every eviction so a load that raced with a profile save is not cached
+    private long evictions;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder batchLoads = new LongAdder();
+
+    public DoctorSummaryCache(DoctorRepository doctorRepository,
+                              @Value("${doctors.summary-cache.max-entries:5000}") int maxEntries,
+                              @Value("${doctors.summary-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.doctorRepository = doctorRepository;
+        this.ttlMillis = ttlSeconds * 1000L;
+        this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public Summary get(Long userId) {
+        return getAll(Collections.singleton(userId)).get(userId);
+    }
+
+    // A summary for every non-null id; ids without a doctor profile map to an all-null summary
+    public Map<Long, Summary> getAll(Collection<Long> userIds) {
+        Map<Long, Summary> out = new HashMap<>();
+        Set<Long> missing = new HashSet<>();
+        long now = System.currentTimeMillis();
+        long seenEvictions;
+        synchronized (entries) {
+            for (Long id : userIds) {
+                if (id == null || out.containsKey(id)) continue;
+                Entry e = entries.get(id);
+                if (e != null && now - e.loadedAt < ttlMillis) out.put(id, e.summary);
+                else missing.add(id);
+            }
+            seenEvictions = evictions;
+        }
+        hits.add(out.size());
+        if (missing.isEmpty()) return out;
+
+        // one query for all misses, outside the lock so a slow query does not stall other listings
+        misses.add(missing.size());
+        batchLoads.increment();
+        Map<Long, Summary> loaded = new HashMap<>();
+        for (Object[] row : doctorRepository.findSummariesByUserIds(missing)) {
+            Long id = (Long) row[0];
+            loaded.put(id, new Summary(id, (String) row[1], (String) row[2], (String) row[3], (Double) row[4]));
+        }
+        for (Long id : missing) loaded.putIfAbsent(id, new Summary(id, null, null, null, null));
+        synchronized (entries) {
+            if (seenEvictions == evictions) {
+                for (Summary s : loaded.values()) entries.put(s.userId, new Entry(s, now));
+            }
+        }
+        out.putAll(loaded);
+        return out;
+    }
+
+    public void evict(Long userId) {
+        synchronized (entries) {
+            entries.remove(userId);
+            evictions++;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        synchronized (entries) {
+            m.put("size", entries.size());
+        }
+        m.put("hits", hits.sum());
+        m.put("misses", misses.sum());
+        m.put("batchLoads", batchLoads.sum());
+        return m;
+    }
+}
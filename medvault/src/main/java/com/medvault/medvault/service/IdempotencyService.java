@@ -0,0 +1,214 @@
+package com.medvault.medvault.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.OffsetDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency-Key support for write endpoints. The first response for a key is recorded
+ * and every retry with that key gets it back without running the action again.
+ *
+ * The key row is inserted before the action, inside the caller's transaction: a concurrent
+ * retry blocks on the primary key until the first attempt commits (and then replays it) or
+ * rolls back (and then runs itself). Completed responses are also kept in a bounded
+ * in-memory LRU, so retry storms against one node are answered without a query.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 200;
+
+    private static final class Stored {
+        final String requestHash;
+        final int status;
+        final String body;
+        final long expiresAt;
+
+        Stored(String requestHash, int status, String body, long expiresAt) {
+            this.requestHash = requestHash;
+            this.status = status;
+            this.body = body;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long ttlMillis;
+    private final Map<String, Stored> hot;
+    // the HTTP layer's mapper, so a replayed body is byte for byte what the first response carried
+    private final JsonMapper mapper;
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder hotReplays = new LongAdder();
+    private final LongAdder dbReplays = new LongAdder();
+    private final LongAdder mismatches = new LongAdder();
+
+    public IdempotencyService(JdbcTemplate jdbcTemplate, JsonMapper mapper,
+                              @Value("${idempotency.ttl-hours:24}") long ttlHours,
+                              @Value("${idempotency.hot-entries:10000}") int hotEntries) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.mapper = mapper;
+        this.ttlMillis = ttlHours * 3600_000L;
+        this.hot = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Stored> eldest) {
+                return size() > hotEntries;
+            }
+        };
+    }
+
+    /**
+     * Runs action at most once per (scope, key). Without a key the action just runs.
+     * scope identifies the endpoint and resource (e.g. "PATCH /api/appointments/7/cancel");
+     * request is the body, used to refuse a key reused with a different payload.
+     */
+    public ResponseEntity<?> execute(String key, String scope, Object request, Supplier<ResponseEntity<?>> action) {
+        if (key == null || key.isBlank()) return action.get();
+        if (key.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", HEADER + " is too long"));
+        }
+        String fullScope = principal() + " " + scope;
+        String hotKey = fullScope + "\n" + key;
+        String requestHash = hash(request);
+        long now = System.currentTimeMillis();
+
+        Stored cached;
+        synchronized (hot) {
+            cached = hot.get(hotKey);
+        }
+        if (cached != null && cached.expiresAt > now) {
+            hotReplays.increment();
+            return replay(cached, requestHash);
+        }
+
+        OffsetDateTime expiresAt = OffsetDateTime.now().plusNanos(ttlMillis * 1_000_000L);
+        int claimed = jdbcTemplate.update("INSERT INTO idempotency_keys (scope, idem_key, request_hash, expires_at) "
+                + "VALUES (?, ?, ?, ?) ON CONFLICT DO NOTHING", fullScope, key, requestHash, expiresAt);
+        if (claimed == 0) {
+            // an expired key starts over; the row lock lets only one retry take it
+            claimed = jdbcTemplate.update("UPDATE idempotency_keys SET request_hash = ?, status_code = NULL, "
+                    + "response_body = NULL, expires_at = ? WHERE scope = ? AND idem_key = ? "
+                    + "AND expires_at < CURRENT_TIMESTAMP", requestHash, expiresAt, fullScope, key);
+        }
+        if (claimed == 0) {
+            List<Stored> rows = jdbcTemplate.query("SELECT request_hash, status_code, response_body, expires_at "
+                    + "FROM idempotency_keys WHERE scope = ? AND idem_key = ?", (rs, n) -> new Stored(
+                    rs.getString("request_hash"), rs.getInt("status_code"), rs.getString("response_body"),
+                    rs.getObject("expires_at", OffsetDateTime.class).toInstant().toEpochMilli()), fullScope, key);
+            if (!rows.isEmpty() && rows.get(0).body != null) {
+                dbReplays.increment();
+                remember(hotKey, rows.get(0));
+                return replay(rows.get(0), requestHash);
+            }
+            // the earlier attempt's transaction is not visible to us (no surrounding transaction)
+            return ResponseEntity.status(409).header("Retry-After", "1")
+                    .body(Map.of("success", false, "message", "A request with this " + HEADER + " is still in progress"));
+        }
+
+        executed.increment();
+        ResponseEntity<?> response = action.get();
+        int status = response.getStatusCode().value();
+        if (status >= 500 || status == 429) {
+            // transient failures are not recorded; the retry gets to run again
+            jdbcTemplate.update("DELETE FROM idempotency_keys WHERE scope = ? AND idem_key = ?", fullScope, key);
+            return response;
+        }
+        String body = serialize(response.getBody());
+        jdbcTemplate.update("UPDATE idempotency_keys SET status_code = ?, response_body = ? WHERE scope = ? AND idem_key = ?",
+                status, body, fullScope, key);
+        Stored stored = new Stored(requestHash, status, body, now + ttlMillis);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    remember(hotKey, stored);
+                }
+            });
+        } else {
+            remember(hotKey, stored);
+        }
+        return response;
+    }
+
+    private ResponseEntity<?> replay(Stored stored, String requestHash) {
+        if (!stored.requestHash.equals(requestHash)) {
+            mismatches.increment();
+            return ResponseEntity.unprocessableEntity()
+                    .body(Map.of("success", false, "message", HEADER + " was already used with a different request"));
+        }
+        return ResponseEntity.status(stored.status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(REPLAYED_HEADER, "true")
+                .body(stored.body);
+    }
+
+    private void remember(String hotKey, Stored stored) {
+        synchronized (hot) {
+            hot.put(hotKey, stored);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.cleanup-ms:3600000}")
+    public void deleteExpired() {
+        jdbcTemplate.update("DELETE FROM idempotency_keys WHERE expires_at < ?", OffsetDateTime.now());
+        long now = System.currentTimeMillis();
+        synchronized (hot) {
+            hot.values().removeIf(s -> s.expiresAt <= now);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        synchronized (hot) {
+            m.put("hotEntries", hot.size());
+        }
+        m.put("executed", executed.sum());
+        m.put("hotReplays", hotReplays.sum());
+        m.put("dbReplays", dbReplays.sum());
+        m.put("keyReuseRejected", mismatches.sum());
+        return m;
+    }
+
+    private static String principal() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth == null || !auth.isAuthenticated() ? "anonymous" : auth.getName();
+    }
+
+    private String serialize(Object body) {
+        try {
+            return body == null ? "null" : mapper.writeValueAsString(body);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to record idempotent response", e);
+        }
+    }
+
+    private String hash(Object request) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(serialize(request).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
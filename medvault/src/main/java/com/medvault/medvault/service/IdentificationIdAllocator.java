@@ -0,0 +1,98 @@
+package com.medvault.medvault.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * Hands out PID-/DID-/UID- identification ids from per-prefix database sequences in
+ * blocks (hi/lo). One nextval reserves a block of ids for this node, so most signups need
+ * no round trip, and ids stay unique across nodes because blocks never overlap. The block
+ * size is each sequence's own INCREMENT BY, read at startup, so the two cannot disagree.
+ */
+@Component
+public class IdentificationIdAllocator {
+
+    private static final Map<String, String> SEQUENCES = Map.of(
+            "PID", "identification_pid_seq",
+            "DID", "identification_did_seq",
+            "UID", "identification_uid_seq");
+
+    private static final class Block {
+        long next = 1;
+        long limit = 0; // empty until the first refill
+    }
+
+    private final ToLongFunction<String> nextHi;
+    private final Map<String, Integer> blockSizes;
+    private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+
+    @Autowired
+    public IdentificationIdAllocator(JdbcTemplate jdbcTemplate) {
+        this(seq -> jdbcTemplate.queryForObject("SELECT nextval('" + seq + "')", Long.class),
+                sequenceIncrements(jdbcTemplate));
+    }
+
+    // nextHi returns the top of the next reserved block for the given sequence name
+    IdentificationIdAllocator(ToLongFunction<String> nextHi, int blockSize) {
+        this(nextHi, uniform(blockSize));
+    }
+
+    private IdentificationIdAllocator(ToLongFunction<String> nextHi, Map<String, Integer> blockSizes) {
+        this.nextHi = nextHi;
+        this.blockSizes = blockSizes;
+    }
+
+    private static Map<String, Integer> sequenceIncrements(JdbcTemplate jdbcTemplate) {
+        Map<String, Integer> sizes = new HashMap<>();
+        for (String sequence : SEQUENCES.values()) {
+            Long increment;
+            try {
+                increment = jdbcTemplate.queryForObject(
+                        "SELECT increment_by FROM pg_sequences WHERE schemaname = current_schema() AND sequencename = ?",
+                        Long.class, sequence);
+            } catch (EmptyResultDataAccessException e) {
+                throw new IllegalStateException("Identification sequence " + sequence + " does not exist", e);
+            }
+            if (increment == null || increment < 1 || increment > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Identification sequence " + sequence
+                        + " must have a positive INCREMENT BY, found " + increment);
+            }
+            sizes.put(sequence, increment.intValue());
+        }
+        return sizes;
+    }
+
+    private static Map<String, Integer> uniform(int blockSize) {
+        Map<String, Integer> sizes = new HashMap<>();
+        for (String sequence : SEQUENCES.values()) sizes.put(sequence, blockSize);
+        return sizes;
+    }
+
+    public String allocate(String prefix) {
+        String sequence = SEQUENCES.get(prefix);
+        if (sequence == null) throw new IllegalArgumentException("Unknown identification prefix: " + prefix);
+        Block block = blocks.computeIfAbsent(prefix, p -> new Block());
+        long n;
+        synchronized (block) {
+            if (block.next > block.limit) {
+                long hi = nextHi.applyAsLong(sequence);
+                block.next = hi - blockSizes.get(sequence) + 1;
+                block.limit = hi;
+            }
+            n = block.next++;
+        }
+        return prefix + "-" + String.format("%05d", n);
+    }
+
+    public static String prefixForRole(String role) {
+        return "PATIENT".equalsIgnoreCase(role) ? "PID" :
+               "DOCTOR".equalsIgnoreCase(role) ? "DID" : "UID";
+    }
+}
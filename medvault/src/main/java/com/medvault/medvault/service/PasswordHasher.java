@@ -0,0 +1,145 @@
+package com.medvault.medvault.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs bcrypt hashing and verification on a dedicated, size-limited pool with a bounded
+ * queue, so a login burst cannot occupy every servlet thread with hashing. When the queue
+ * is full the call fails fast with PasswordHashingBusyException instead of waiting.
+ */
+@Service
+public class PasswordHasher {
+
+    private final BCryptPasswordEncoder encoder;
+    private final int strength;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxHashNanos = new AtomicLong();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    // bulk hashing (user import) is counted apart so it does not skew the login latencies above
+    private final LongAdder bulkOperations = new LongAdder();
+    private final LongAdder bulkHashNanos = new LongAdder();
+
+    public PasswordHasher(@Value("${security.bcrypt.strength:10}") int strength,
+                          @Value("${security.bcrypt.pool-size:0}") int poolSize,
+                          @Value("${security.bcrypt.queue-capacity:64}") int queueCapacity,
+                          @Value("${security.bcrypt.timeout-ms:10000}") long timeoutMillis) {
+        this.strength = strength;
+        this.encoder = new BCryptPasswordEncoder(strength);
+        this.timeoutMillis = timeoutMillis;
+        int threads = poolSize > 0 ? poolSize : Math.max(1, Runtime.getRuntime().availableProcessors());
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "bcrypt-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public String encode(String rawPassword) {
+        return submit(() -> encoder.encode(rawPassword));
+    }
+
+    public boolean matches(String rawPassword, String encodedPassword) {
+        return submit(() -> encoder.matches(rawPassword, encodedPassword));
+    }
+
+    // Hashes on the calling thread; for bulk work that already runs on its own worker pool
+    public String encodeOnCurrentThread(String rawPassword) {
+        long start = System.nanoTime();
+        try {
+            return encoder.encode(rawPassword);
+        } finally {
+            bulkOperations.increment();
+            bulkHashNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    // true when the stored hash was produced with a lower cost than security.bcrypt.strength
+    public boolean needsUpgrade(String encodedPassword) {
+        return encoder.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T submit(Callable<T> work) {
+        long queuedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long start = System.nanoTime();
+                waitNanos.add(start - queuedAt);
+                try {
+                    return work.call();
+                } finally {
+                    record(System.nanoTime() - start);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            rejected.increment();
+            throw new PasswordHashingBusyException("Password hashing capacity exhausted, please retry shortly");
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            timedOut.increment();
+            throw new PasswordHashingBusyException("Password hashing timed out, please retry shortly");
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingBusyException("Interrupted while waiting for password hashing");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private void record(long nanos) {
+        operations.increment();
+        hashNanos.add(nanos);
+        maxHashNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public Map<String, Object> stats() {
+        long ops = operations.sum();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("strength", strength);
+        m.put("poolSize", executor.getMaximumPoolSize());
+        m.put("activeThreads", executor.getActiveCount());
+        m.put("queueDepth", executor.getQueue().size());
+        m.put("queueRemainingCapacity", executor.getQueue().remainingCapacity());
+        m.put("operations", ops);
+        m.put("rejected", rejected.sum());
+        m.put("timedOut", timedOut.sum());
+        m.put("avgHashMillis", ops == 0 ? 0.0 : hashNanos.sum() / (double) ops / 1_000_000.0);
+        m.put("maxHashMillis", maxHashNanos.get() / 1_000_000.0);
+        m.put("avgQueueWaitMillis", ops == 0 ? 0.0 : waitNanos.sum() / (double) ops / 1_000_000.0);
+        long bulkOps = bulkOperations.sum();
+        m.put("bulkOperations", bulkOps);
+        m.put("avgBulkHashMillis", bulkOps == 0 ? 0.0 : bulkHashNanos.sum() / (double) bulkOps / 1_000_000.0);
+        return m;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
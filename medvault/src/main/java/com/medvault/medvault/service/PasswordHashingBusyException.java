@@ -0,0 +1,8 @@
+package com.medvault.medvault.service;
+
+// Thrown when the bcrypt worker pool is saturated; callers should answer 503 rather than queue
+public class PasswordHashingBusyException extends RuntimeException {
+    public PasswordHashingBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,95 @@
+package com.medvault.medvault.service;
+
+import com.medvault.medvault.model.RefreshToken;
+import com.medvault.medvault.repository.RefreshTokenRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Opaque refresh tokens stored server-side. Only the SHA-256 of a token is persisted.
+ * Each refresh rotates the token; presenting an already-rotated token is treated as
+ * theft and revokes every refresh token of that user.
+ */
+@Service
+public class RefreshTokenService {
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final long refreshExpirationMillis;
+    private final SecureRandom random = new SecureRandom();
+
+    public RefreshTokenService(RefreshTokenRepository refreshTokenRepository,
+                               @Value("${jwt.refresh-expiration:1209600000}") long refreshExpirationMillis) { // 14 days
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.refreshExpirationMillis = refreshExpirationMillis;
+    }
+
+    public String issue(Long userId) {
+        byte[] raw = new byte[32];
+        random.nextBytes(raw);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+        RefreshToken rt = new RefreshToken();
+        rt.setUserId(userId);
+        rt.setTokenHash(hash(token));
+        rt.setExpiresAt(OffsetDateTime.now().plusNanos(refreshExpirationMillis * 1_000_000L));
+        refreshTokenRepository.save(rt);
+        return token;
+    }
+
+    /**
+     * Consumes a refresh token and returns the owning user id, or empty when the token is
+     * unknown, expired or already used. The caller issues the replacement token.
+     */
+    @Transactional
+    public Optional<Long> consume(String token) {
+        if (token == null || token.isBlank()) return Optional.empty();
+        Optional<RefreshToken> opt = refreshTokenRepository.findByTokenHash(hash(token));
+        if (opt.isEmpty()) return Optional.empty();
+        RefreshToken rt = opt.get();
+        if (Boolean.TRUE.equals(rt.getRevoked())) {
+            // reuse of a rotated token: somebody else holds a copy, cut off the whole family
+            refreshTokenRepository.revokeAllForUser(rt.getUserId());
+            return Optional.empty();
+        }
+        if (rt.getExpiresAt().isBefore(OffsetDateTime.now())) return Optional.empty();
+        if (refreshTokenRepository.markUsed(rt.getId()) == 0) return Optional.empty();
+        return Optional.of(rt.getUserId());
+    }
+
+    @Transactional
+    public void revoke(String token) {
+        if (token == null || token.isBlank()) return;
+        refreshTokenRepository.findByTokenHash(hash(token)).ifPresent(rt -> {
+            rt.setRevoked(true);
+            refreshTokenRepository.save(rt);
+        });
+    }
+
+    public void revokeAllForUser(Long userId) {
+        refreshTokenRepository.revokeAllForUser(userId);
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.refresh-cleanup-ms:3600000}")
+    public void deleteExpired() {
+        refreshTokenRepository.deleteExpired(OffsetDateTime.now());
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.medvault.medvault.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps doctor_schedules.free_slot_count (active slots of the day) and next_free_slot_time
+ * (earliest active slot_time) in step with schedule_slots, so availability listings can
+ * filter on the schedule row alone. Holds do not change the counters: a held slot is still
+ * capacity until it is booked.
+ *
+ * Slot writes mark their schedule with touched(); the counters of every touched schedule
+ * are recomputed just before the transaction commits, after locking those schedule rows in
+ * id order. Recomputing (rather than adding +1/-1) under the lock means the last committer
+ * always counts from the committed slot rows, so concurrent bookings of the same day cannot
+ * leave a wrong count, and id order keeps multi-day operations (reschedule, batch) from
+ * deadlocking on the schedule rows.
+ *
+ * checkDrift() periodically compares the stored counters of today's and later days with the
+ * slot rows and repairs any that differ.
+ */
+@Service
+public class ScheduleCounters {
+
+    private static final String LEASE = "schedule-counter-check";
+
+    private static final String RECOMPUTE = "UPDATE doctor_schedules s SET "
+            + "free_slot_count = (SELECT count(*) FROM schedule_slots sl WHERE sl.schedule_id = s.id AND sl.active = true), "
+            + "next_free_slot_time = (SELECT min(sl.slot_time) FROM schedule_slots sl WHERE sl.schedule_id = s.id AND sl.active = true) "
+            + "WHERE s.id IN ";
+
+    private static final String DRIFTED = " AND (s.free_slot_count IS DISTINCT FROM "
+            + "(SELECT count(*) FROM schedule_slots sl WHERE sl.schedule_id = s.id AND sl.active = true) "
+            + "OR s.next_free_slot_time IS DISTINCT FROM "
+            + "(SELECT min(sl.slot_time) FROM schedule_slots sl WHERE sl.schedule_id = s.id AND sl.active = true))";
+
+    private static final String CHECK = "SELECT s.id, s.free_slot_count, s.next_free_slot_time, c.n, c.t "
+            + "FROM doctor_schedules s CROSS JOIN LATERAL (SELECT count(*) AS n, min(sl.slot_time) AS t "
+            + "FROM schedule_slots sl WHERE sl.schedule_id = s.id AND sl.active = true) c "
+            + "WHERE s.date >= ? AND s.id > ? ORDER BY s.id LIMIT ?";
+
+    // The schedules a transaction has touched; refreshed once, in beforeCommit
+    private final class Pending implements TransactionSynchronization {
+        final SortedSet<Long> scheduleIds = new TreeSet<>();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            refresh(scheduleIds);
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SchedulerLease lease;
+    private final AppointmentTimes appointmentTimes;
+    private final int checkChunkSize;
+    private final long leaseTtlMillis;
+
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder schedulesRefreshed = new LongAdder();
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder driftRepaired = new LongAdder();
+    private final AtomicLong lastCheckDrift = new AtomicLong(-1);
+    private final AtomicLong lastCheckMs = new AtomicLong(-1);
+    private volatile OffsetDateTime lastCheckAt;
+
+    public ScheduleCounters(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                            SchedulerLease lease, AppointmentTimes appointmentTimes,
+                            @Value("${schedules.counters.check-chunk-size:1000}") int checkChunkSize,
+                            @Value("${schedules.counters.lease-ttl-ms:600000}") long leaseTtlMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.lease = lease;
+        this.appointmentTimes = appointmentTimes;
+        this.checkChunkSize = Math.max(1, checkChunkSize);
+        this.leaseTtlMillis = leaseTtlMillis;
+    }
+
+    // Called by every write to schedule_slots; outside a transaction the refresh is immediate
+    public void touched(Long scheduleId) {
+        if (scheduleId == null) return;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            refresh(List.of(scheduleId));
+            return;
+        }
+        for (TransactionSynchronization sync : TransactionSynchronizationManager.getSynchronizations()) {
+            if (sync instanceof Pending) {
+                ((Pending) sync).scheduleIds.add(scheduleId);
+                return;
+            }
+        }
+        Pending pending = new Pending();
+        pending.scheduleIds.add(scheduleId);
+        TransactionSynchronizationManager.registerSynchronization(pending);
+    }
+
+    /**
+     * Locks the schedules in id order and recomputes their counters. Must run inside the
+     * transaction that changed the slots (or in its own); the recompute is a separate
+     * statement after the lock, so it sees everything committed before the lock was granted.
+     */
+    public void refresh(Collection<Long> scheduleIds) {
+        if (scheduleIds.isEmpty()) return;
+        List<Long> ids = new ArrayList<>(new TreeSet<>(scheduleIds));
+        String in = placeholders(ids.size());
+        jdbcTemplate.queryForList("SELECT id FROM doctor_schedules WHERE id IN " + in + " ORDER BY id FOR UPDATE",
+                Long.class, ids.toArray());
+        jdbcTemplate.update(RECOMPUTE + in, ids.toArray());
+        refreshes.increment();
+        schedulesRefreshed.add(ids.size());
+    }
+
+    // Compares stored counters of today's and later days with the slot rows; repairs and reports drift
+    @Scheduled(fixedDelayString = "${schedules.counters.check-ms:3600000}", initialDelayString = "${schedules.counters.check-ms:3600000}")
+    public void checkDrift() {
+        if (!lease.tryAcquire(LEASE, leaseTtlMillis)) return;
+        try {
+            runCheck();
+        } finally {
+            lease.release(LEASE);
+        }
+    }
+
+    // Number of schedules whose counters were wrong (and are now repaired)
+    public long runCheck() {
+        long start = System.nanoTime();
+        Date today = Date.valueOf(LocalDate.now(appointmentTimes.zone()));
+        long drift = 0;
+        long after = 0;
+        while (true) {
+            List<Long> seen = new ArrayList<>();
+            List<Long> suspects = new ArrayList<>();
+            jdbcTemplate.query(CHECK, rs -> {
+                long id = rs.getLong("id");
+                seen.add(id);
+                Number stored = (Number) rs.getObject("free_slot_count");
+                boolean same = stored != null && stored.longValue() == rs.getLong("n")
+                        && Objects.equals(rs.getString("next_free_slot_time"), rs.getString("t"));
+                if (!same) suspects.add(id);
+            }, today, after, checkChunkSize);
+            if (seen.isEmpty()) break;
+            if (!suspects.isEmpty()) {
+                // the read above is unlocked; re-check under the row locks so an in-flight booking is not counted as drift
+                Integer repaired = transactionTemplate.execute(status -> {
+                    String in = placeholders(suspects.size());
+                    jdbcTemplate.queryForList("SELECT id FROM doctor_schedules WHERE id IN " + in + " ORDER BY id FOR UPDATE",
+                            Long.class, suspects.toArray());
+                    return jdbcTemplate.update(RECOMPUTE + in + DRIFTED, suspects.toArray());
+                });
+                drift += repaired == null ? 0 : repaired;
+            }
+            after = seen.get(seen.size() - 1);
+            if (seen.size() < checkChunkSize) break;
+        }
+        checks.increment();
+        driftRepaired.add(drift);
+        lastCheckDrift.set(drift);
+        lastCheckMs.set((System.nanoTime() - start) / 1_000_000);
+        lastCheckAt = OffsetDateTime.now();
+        return drift;
+    }
+
+    private static String placeholders(int n) {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < n; i++) sb.append(i == 0 ? "?" : ", ?");
+        return sb.append(')').toString();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("refreshes", refreshes.sum());
+        m.put("schedulesRefreshed", schedulesRefreshed.sum());
+        m.put("driftChecks", checks.sum());
+        m.put("driftRepaired", driftRepaired.sum());
+        m.put("lastCheckDrift", lastCheckDrift.get());
+        m.put("lastCheckMs", lastCheckMs.get());
+        m.put("lastCheckAt", lastCheckAt == null ? null : lastCheckAt.toString());
+        return m;
+    }
+}
@@ -0,0 +1,254 @@
+package com.medvault.medvault.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Materializes doctor_schedules and schedule_slots rows from each doctor's WeeklyTemplate
+ * for a rolling horizon (schedules.generator.horizon-days from today, clinic time zone).
+ *
+ * Doctors are read in id-ordered chunks; each chunk is one transaction with a fixed number
+ * of round trips however many doctors and days it holds: one nextval query for all the new
+ * schedule ids, then JDBC batches for the schedules, the slots and the progress rows.
+ * A day the doctor already has a schedule for is never touched. schedule_generation records
+ * how far each doctor has been generated and from which template, so the nightly run only
+ * adds the day(s) that entered the horizon; a changed template is applied from today to the
+ * days not generated yet.
+ */
+@Service
+public class ScheduleGenerator {
+
+    private static final String LEASE = "schedule-generator";
+    // serializes generator transactions (nightly run vs. a doctor saving a template)
+    private static final long ADVISORY_LOCK = 0x5C4EDL;
+
+    public static class Result {
+        public long doctors;
+        public long days;
+        public long slots;
+        public long invalidTemplates;
+        public long elapsedMs;
+    }
+
+    private static final class DoctorRow {
+        final long id;
+        final long userId;
+        final String name;
+        final String specialization;
+        final String template;
+        final LocalDate generatedThrough;
+        final Integer templateHash;
+
+        DoctorRow(long id, long userId, String name, String specialization, String template,
+                  LocalDate generatedThrough, Integer templateHash) {
+            this.id = id;
+            this.userId = userId;
+            this.name = name;
+            this.specialization = specialization;
+            this.template = template;
+            this.generatedThrough = generatedThrough;
+            this.templateHash = templateHash;
+        }
+    }
+
+    private static final String DOCTORS = "SELECT d.id, d.user_id, d.full_name, d.specialization, d.availability_schedule, "
+            + "g.generated_through, g.template_hash FROM doctors d "
+            + "LEFT JOIN schedule_generation g ON g.doctor_user_id = d.user_id "
+            + "WHERE ltrim(d.availability_schedule) LIKE '{%' AND d.id > ? ";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SchedulerLease lease;
+    private final AppointmentTimes appointmentTimes;
+    private final int horizonDays;
+    private final int chunkSize;
+    private final long leaseTtlMillis;
+    private final ReentrantLock running = new ReentrantLock();
+
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder daysCreated = new LongAdder();
+    private final LongAdder slotsCreated = new LongAdder();
+    private final LongAdder invalidTemplates = new LongAdder();
+    private final AtomicLong lastRunMs = new AtomicLong(-1);
+    private volatile OffsetDateTime lastRunAt;
+
+    public ScheduleGenerator(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                             SchedulerLease lease, AppointmentTimes appointmentTimes,
+                             @Value("${schedules.generator.horizon-days:56}") int horizonDays,
+                             @Value("${schedules.generator.chunk-size:500}") int chunkSize,
+                             @Value("${schedules.generator.lease-ttl-ms:600000}") long leaseTtlMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.lease = lease;
+        this.appointmentTimes = appointmentTimes;
+        this.horizonDays = horizonDays;
+        this.chunkSize = chunkSize;
+        this.leaseTtlMillis = leaseTtlMillis;
+    }
+
+    // Daily top-up: brings every doctor's horizon forward to today + horizon-days
+    @Scheduled(cron = "${schedules.generator.cron:0 30 1 * * *}", zone = "${appointments.time-zone:UTC}")
+    public void topUp() {
+        try {
+            generateAll();
+        } catch (IllegalStateException busy) {
+            // another node (or an admin-triggered run) is already at it
+        }
+    }
+
+    // All doctors with a template, one node at a time
+    public Result generateAll() {
+        if (!running.tryLock()) throw new IllegalStateException("Schedule generation is already running");
+        try {
+            if (!lease.tryAcquire(LEASE, leaseTtlMillis)) {
+                throw new IllegalStateException("Schedule generation is already running on another node");
+            }
+            try {
+                return generate(null);
+            } finally {
+                lease.release(LEASE);
+            }
+        } finally {
+            running.unlock();
+        }
+    }
+
+    // One doctor, e.g. right after they save a template; safe to run alongside generateAll
+    public Result generateFor(Long doctorUserId) {
+        return generate(doctorUserId);
+    }
+
+    private Result generate(Long onlyDoctorUserId) {
+        long start = System.nanoTime();
+        Result result = new Result();
+        LocalDate today = LocalDate.now(appointmentTimes.zone());
+        LocalDate last = today.plusDays(horizonDays - 1L);
+
+        long after = 0;
+        while (true) {
+            List<DoctorRow> chunk = onlyDoctorUserId == null
+                    ? jdbcTemplate.query(DOCTORS + "ORDER BY d.id LIMIT ?", this::doctorRow, after, chunkSize)
+                    : jdbcTemplate.query(DOCTORS + "AND d.user_id = ?", this::doctorRow, after, onlyDoctorUserId);
+            if (chunk.isEmpty()) break;
+            transactionTemplate.executeWithoutResult(status -> generateChunk(chunk, today, last, result));
+            after = chunk.get(chunk.size() - 1).id;
+            if (onlyDoctorUserId != null || chunk.size() < chunkSize) break;
+            // keeps the lease alive through a long run; stop if another node has taken over
+            if (!lease.tryAcquire(LEASE, leaseTtlMillis)) break;
+        }
+
+        result.elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        runs.increment();
+        daysCreated.add(result.days);
+        slotsCreated.add(result.slots);
+        invalidTemplates.add(result.invalidTemplates);
+        lastRunMs.set(result.elapsedMs);
+        lastRunAt = OffsetDateTime.now();
+        return result;
+    }
+
+    private void generateChunk(List<DoctorRow> chunk, LocalDate today, LocalDate last, Result result) {
+        jdbcTemplate.query("SELECT pg_advisory_xact_lock(?)", rs -> null, ADVISORY_LOCK);
+
+        List<DoctorRow> dayDoctors = new ArrayList<>();
+        List<LocalDate> dayDates = new ArrayList<>();
+        List<List<WeeklyTemplate.Slot>> daySlots = new ArrayList<>();
+        List<Object[]> progress = new ArrayList<>(chunk.size());
+        for (DoctorRow d : chunk) {
+            WeeklyTemplate template;
+            try {
+                template = WeeklyTemplate.parse(d.template);
+            } catch (IllegalArgumentException e) {
+                result.invalidTemplates++;
+                continue;
+            }
+            result.doctors++;
+            int hash = d.template.hashCode();
+            LocalDate from = today;
+            if (d.generatedThrough != null && d.templateHash != null && d.templateHash == hash
+                    && d.generatedThrough.isAfter(today.minusDays(1))) {
+                from = d.generatedThrough.plusDays(1);
+            }
+            for (LocalDate day = from; !day.isAfter(last); day = day.plusDays(1)) {
+                List<WeeklyTemplate.Slot> slots = template.slotsOn(day.getDayOfWeek());
+                if (slots.isEmpty()) continue;
+                dayDoctors.add(d);
+                dayDates.add(day);
+                daySlots.add(slots);
+            }
+            progress.add(new Object[] {d.userId, Date.valueOf(last), hash});
+        }
+
+        if (!dayDates.isEmpty()) {
+            // ids for every candidate day in one round trip; the ones for skipped days are just gaps
+            List<Long> ids = jdbcTemplate.queryForList("SELECT nextval(pg_get_serial_sequence('doctor_schedules', 'id')) "
+                    + "FROM generate_series(1, ?)", Long.class, dayDates.size());
+            List<Object[]> scheduleArgs = new ArrayList<>(dayDates.size());
+            for (int i = 0; i < dayDates.size(); i++) {
+                DoctorRow d = dayDoctors.get(i);
+                Date day = Date.valueOf(dayDates.get(i));
+                List<WeeklyTemplate.Slot> slots = daySlots.get(i);
+                // a new day's slots are all free; template slots are in time order
+                scheduleArgs.add(new Object[] {ids.get(i), d.userId, d.name, d.specialization, day,
+                        slots.size(), slots.get(0).time, d.userId, day});
+            }
+            int[] inserted = jdbcTemplate.batchUpdate("INSERT INTO doctor_schedules (id, doctor_user_id, doctor_name, specialization, date, "
+                    + "free_slot_count, next_free_slot_time) SELECT ?, ?, ?, ?, ?, ?, ? WHERE NOT EXISTS "
+                    + "(SELECT 1 FROM doctor_schedules WHERE doctor_user_id = ? AND date = ?)", scheduleArgs);
+
+            List<Object[]> slotArgs = new ArrayList<>();
+            for (int i = 0; i < inserted.length; i++) {
+                if (inserted[i] <= 0) continue; // the doctor already has this day
+                result.days++;
+                List<WeeklyTemplate.Slot> slots = daySlots.get(i);
+                for (int p = 0; p < slots.size(); p++) {
+                    slotArgs.add(new Object[] {ids.get(i), slots.get(p).key, slots.get(p).time, p});
+                }
+            }
+            if (!slotArgs.isEmpty()) {
+                jdbcTemplate.batchUpdate("INSERT INTO schedule_slots (schedule_id, slot_key, slot_time, position, active) "
+                        + "VALUES (?, ?, ?, ?, true) ON CONFLICT (schedule_id, slot_key) DO NOTHING", slotArgs);
+                result.slots += slotArgs.size();
+            }
+        }
+
+        if (!progress.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO schedule_generation (doctor_user_id, generated_through, template_hash) "
+                    + "VALUES (?, ?, ?) ON CONFLICT (doctor_user_id) DO UPDATE SET generated_through = EXCLUDED.generated_through, "
+                    + "template_hash = EXCLUDED.template_hash, updated_at = CURRENT_TIMESTAMP", progress);
+        }
+    }
+
+    private DoctorRow doctorRow(ResultSet rs, int n) throws SQLException {
+        Date through = rs.getDate("generated_through");
+        Number hash = (Number) rs.getObject("template_hash");
+        return new DoctorRow(rs.getLong("id"), rs.getLong("user_id"), rs.getString("full_name"),
+                rs.getString("specialization"), rs.getString("availability_schedule"),
+                through == null ? null : through.toLocalDate(), hash == null ? null : hash.intValue());
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("horizonDays", horizonDays);
+        m.put("runs", runs.sum());
+        m.put("daysCreated", daysCreated.sum());
+        m.put("slotsCreated", slotsCreated.sum());
+        m.put("invalidTemplates", invalidTemplates.sum());
+        m.put("lastRunMs", lastRunMs.get());
+        m.put("lastRunAt", lastRunAt == null ? null : lastRunAt.toString());
+        return m;
+    }
+}
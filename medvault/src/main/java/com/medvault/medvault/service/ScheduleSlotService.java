@@ -0,0 +1,266 @@
+package com.medvault.medvault.service;
+
+import com.medvault.medvault.model.ScheduleSlot;
+import com.medvault.medvault.repository.DoctorScheduleRepository;
+import com.medvault.medvault.repository.ScheduleSlotRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.*;
+
+/**
+ * Slot state changes, one schedule_slots row at a time through SlotWriter (pessimistic
+ * conditional UPDATEs or optimistic version checks, see booking.concurrency.mode), so
+ * bookings of different slots of the same doctor-day never wait on each other. With
+ * booking.engine.enabled the availability changes go through SlotInventoryEngine instead.
+ * Every change marks the schedule's free-slot counters for refresh (ScheduleCounters); in
+ * engine mode that happens when the outbox is flushed into schedule_slots.
+ */
+@Service
+public class ScheduleSlotService {
+
+    // CONFLICT: the slot changed since the caller's expectedVersion, or kept changing under optimistic retries
+    // BOOKED: a doctor tried to reopen a slot that a live appointment still occupies
+    public enum Outcome { OK, SCHEDULE_NOT_FOUND, SLOT_NOT_FOUND, UNAVAILABLE, HELD, CONFLICT, BOOKED }
+
+    // A slot in the global lock order: by schedule id, then slot key
+    public static final class SlotRef implements Comparable<SlotRef> {
+        public final long scheduleId;
+        public final String slotKey;
+
+        public SlotRef(long scheduleId, String slotKey) {
+            this.scheduleId = scheduleId;
+            this.slotKey = slotKey;
+        }
+
+        @Override
+        public int compareTo(SlotRef o) {
+            int c = Long.compare(scheduleId, o.scheduleId);
+            return c != 0 ? c : slotKey.compareTo(o.slotKey);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SlotRef && compareTo((SlotRef) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(scheduleId) * 31 + slotKey.hashCode();
+        }
+    }
+
+    private final ScheduleSlotRepository slotRepository;
+    private final DoctorScheduleRepository scheduleRepository;
+    private final SlotInventoryEngine engine;
+    private final SlotHoldExpiryService holdExpiry;
+    private final JdbcTemplate jdbcTemplate;
+    private final SlotEventFeed events;
+    private final ScheduleCounters counters;
+    private final SlotWriter writer;
+
+    public ScheduleSlotService(ScheduleSlotRepository slotRepository, DoctorScheduleRepository scheduleRepository,
+                               SlotInventoryEngine engine, SlotHoldExpiryService holdExpiry, JdbcTemplate jdbcTemplate,
+                               SlotEventFeed events, ScheduleCounters counters, SlotWriter writer) {
+        this.slotRepository = slotRepository;
+        this.scheduleRepository = scheduleRepository;
+        this.engine = engine;
+        this.holdExpiry = holdExpiry;
+        this.jdbcTemplate = jdbcTemplate;
+        this.events = events;
+        this.counters = counters;
+        this.writer = writer;
+    }
+
+    /**
+     * Row-locks the given slots, in (schedule_id, slot_key) order, in one statement: Postgres
+     * locks FOR UPDATE rows after the sort, so every caller acquires them in the same order.
+     * Call it before an operation touches more than one slot. Missing slots are skipped. The
+     * in-memory engine decides slot changes by CAS and takes no row locks, so this is a no-op there.
+     */
+    @Transactional
+    public void lockInOrder(Collection<SlotRef> slots) {
+        if (engine.isEnabled() || slots.isEmpty()) return;
+        SortedSet<SlotRef> ordered = new TreeSet<>(slots);
+        StringBuilder sql = new StringBuilder("SELECT id FROM schedule_slots WHERE (schedule_id, slot_key) IN (");
+        List<Object> args = new ArrayList<>(ordered.size() * 2);
+        for (SlotRef ref : ordered) {
+            sql.append(args.isEmpty() ? "(?, ?)" : ", (?, ?)");
+            args.add(ref.scheduleId);
+            args.add(ref.slotKey);
+        }
+        sql.append(") ORDER BY schedule_id, slot_key FOR UPDATE");
+        jdbcTemplate.queryForList(sql.toString(), Long.class, args.toArray());
+    }
+
+    public List<ScheduleSlot> slotsFor(Long scheduleId) {
+        return slotRepository.findByScheduleIdOrderByPositionAsc(scheduleId);
+    }
+
+    // One query for a whole listing, grouped by schedule id in slot order
+    public Map<Long, List<ScheduleSlot>> slotsFor(Collection<Long> scheduleIds) {
+        Map<Long, List<ScheduleSlot>> out = new HashMap<>();
+        if (scheduleIds.isEmpty()) return out;
+        for (ScheduleSlot slot : slotRepository.findByScheduleIdInOrderByScheduleIdAscPositionAsc(scheduleIds)) {
+            out.computeIfAbsent(slot.getScheduleId(), k -> new ArrayList<>()).add(slot);
+        }
+        return out;
+    }
+
+    // The schedule's pre-V8 slots_json document (jsonb since V19), or null; read-only record
+    public String legacySlotsJson(Long scheduleId) {
+        List<String> docs = jdbcTemplate.queryForList("SELECT slots_json::text FROM doctor_schedules WHERE id = ?",
+                String.class, scheduleId);
+        return docs.isEmpty() ? null : docs.get(0);
+    }
+
+    @Transactional
+    public List<ScheduleSlot> createSlots(Long scheduleId, List<ScheduleSlot> slots) {
+        int position = 0;
+        for (ScheduleSlot slot : slots) {
+            slot.setScheduleId(scheduleId);
+            slot.setPosition(position++);
+        }
+        List<ScheduleSlot> saved = slotRepository.saveAll(slots);
+        counters.touched(scheduleId);
+        for (ScheduleSlot slot : saved) {
+            events.slotChanged("added", scheduleId, slot.getSlotKey(), Boolean.TRUE.equals(slot.getActive()), slot.getSlotTime());
+        }
+        return saved;
+    }
+
+    // patientUserId may convert their own live hold into a booking
+    @Transactional
+    public Outcome book(Long scheduleId, String slotKey, Long patientUserId) {
+        Outcome outcome;
+        if (engine.isEnabled()) {
+            outcome = engine.book(scheduleId, slotKey, patientUserId);
+        } else {
+            outcome = scheduleKnown(scheduleId, writer.book(scheduleId, slotKey, patientUserId, OffsetDateTime.now()));
+            if (outcome == Outcome.OK) counters.touched(scheduleId);
+        }
+        if (outcome == Outcome.OK) {
+            holdExpiry.onBooked(scheduleId, slotKey, patientUserId);
+            events.slotChanged("booked", scheduleId, slotKey, false, null);
+        }
+        return outcome;
+    }
+
+    @Transactional
+    public Outcome reserve(Long scheduleId, String slotKey, Long patientUserId, long ttlSeconds) {
+        OffsetDateTime now = OffsetDateTime.now();
+        OffsetDateTime until = now.plusSeconds(ttlSeconds);
+        Outcome outcome;
+        if (engine.isEnabled()) {
+            outcome = engine.reserve(scheduleId, slotKey, patientUserId, until.toInstant().toEpochMilli());
+        } else {
+            outcome = scheduleKnown(scheduleId, writer.reserve(scheduleId, slotKey, patientUserId, until, now));
+        }
+        if (outcome == Outcome.OK) {
+            holdExpiry.onReserved(scheduleId, slotKey, patientUserId, until.toInstant().toEpochMilli());
+            events.slotChanged("held", scheduleId, slotKey, null, null);
+        }
+        return outcome;
+    }
+
+    @Transactional
+    public Outcome release(Long scheduleId, String slotKey) {
+        Outcome outcome;
+        if (engine.isEnabled()) {
+            outcome = engine.release(scheduleId, slotKey);
+        } else {
+            outcome = writer.release(scheduleId, slotKey);
+            if (outcome == Outcome.OK) counters.touched(scheduleId);
+        }
+        if (outcome == Outcome.OK) {
+            holdExpiry.onReleased(scheduleId, slotKey);
+            events.slotChanged("released", scheduleId, slotKey, true, null);
+        }
+        return outcome;
+    }
+
+    @Transactional
+    public Outcome setActive(Long scheduleId, String slotKey, Boolean active) {
+        return setActive(scheduleId, slotKey, active, null);
+    }
+
+    /**
+     * active == null flips the current state. expectedVersion (the slot's version as the
+     * caller last saw it, may be null) makes the change fail with CONFLICT if the slot has
+     * changed since; the in-memory engine keeps its own versions and does not check it.
+     */
+    @Transactional
+    public Outcome setActive(Long scheduleId, String slotKey, Boolean active, Long expectedVersion) {
+        if (reopensBookedSlot(scheduleId, slotKey, active)) return Outcome.BOOKED;
+        Outcome outcome;
+        if (engine.isEnabled()) {
+            outcome = engine.setActive(scheduleId, slotKey, active);
+        } else {
+            outcome = writer.setActive(scheduleId, slotKey, active, expectedVersion);
+            if (outcome == Outcome.OK) counters.touched(scheduleId);
+        }
+        if (outcome == Outcome.OK) events.slotChanged("toggled", scheduleId, slotKey, active, null);
+        return outcome;
+    }
+
+    /**
+     * True when the change would make the slot bookable while a CONFIRMED or RESCHEDULED
+     * appointment still points at it, so a second patient could book it. The slot row is
+     * locked first: a booking commits its slot update and its appointment together, so once
+     * the lock is granted the appointment check sees every booking of the slot. In engine
+     * mode the row may lag the in-memory state, so the check only relies on the appointments.
+     */
+    private boolean reopensBookedSlot(Long scheduleId, String slotKey, Boolean active) {
+        if (Boolean.FALSE.equals(active)) return false;
+        if (!engine.isEnabled()) {
+            List<Boolean> state = jdbcTemplate.queryForList(
+                    "SELECT active FROM schedule_slots WHERE schedule_id = ? AND slot_key = ? FOR UPDATE",
+                    Boolean.class, scheduleId, slotKey);
+            if (state.isEmpty()) return false; // the writer reports the missing slot
+            if (active == null && Boolean.TRUE.equals(state.get(0))) return false; // a flip that disables
+        }
+        Integer live = jdbcTemplate.queryForObject("SELECT count(*) FROM appointments WHERE schedule_id = ? AND slot_id = ? "
+                + "AND status IN ('CONFIRMED', 'RESCHEDULED')", Integer.class, scheduleId, slotKey);
+        return live != null && live > 0;
+    }
+
+    @Transactional
+    public Outcome updateTime(Long scheduleId, String slotKey, String time) {
+        return updateTime(scheduleId, slotKey, time, null);
+    }
+
+    @Transactional
+    public Outcome updateTime(Long scheduleId, String slotKey, String time, Long expectedVersion) {
+        Outcome outcome = writer.updateTime(scheduleId, slotKey, time, expectedVersion);
+        if (outcome != Outcome.OK) return outcome;
+        counters.touched(scheduleId);
+        events.slotChanged("retimed", scheduleId, slotKey, null, time);
+        return Outcome.OK;
+    }
+
+    @Transactional
+    public Outcome delete(Long scheduleId, String slotKey) {
+        return delete(scheduleId, slotKey, null);
+    }
+
+    @Transactional
+    public Outcome delete(Long scheduleId, String slotKey, Long expectedVersion) {
+        Outcome outcome;
+        if (engine.isEnabled()) {
+            outcome = engine.remove(scheduleId, slotKey);
+        } else {
+            outcome = writer.delete(scheduleId, slotKey, expectedVersion);
+            if (outcome == Outcome.OK) counters.touched(scheduleId);
+        }
+        if (outcome == Outcome.OK) events.slotChanged("removed", scheduleId, slotKey, false, null);
+        return outcome;
+    }
+
+    // A missing slot of a missing schedule is reported as the schedule
+    private Outcome scheduleKnown(Long scheduleId, Outcome outcome) {
+        if (outcome == Outcome.SLOT_NOT_FOUND && !scheduleRepository.existsById(scheduleId)) return Outcome.SCHEDULE_NOT_FOUND;
+        return outcome;
+    }
+}
@@ -0,0 +1,54 @@
+package com.medvault.medvault.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Leases on scheduler_leases rows so a background job runs on one node at a time. A lease
+ * is taken when the row is missing, expired or already ours, in a single upsert; the
+ * holder renews it on each run and another node takes over once it lapses.
+ */
+@Component
+public class SchedulerLease {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+    // local view of leases we hold, so a job renews only when half the term has passed
+    private final Map<String, Long> heldUntil = new ConcurrentHashMap<>();
+
+    public SchedulerLease(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public boolean tryAcquire(String name, long ttlMillis) {
+        long now = System.currentTimeMillis();
+        Long until = heldUntil.get(name);
+        if (until != null && until - now > ttlMillis / 2) return true;
+        // expiry is computed on the database clock so node clock skew cannot overlap two holders
+        int n = jdbcTemplate.update("INSERT INTO scheduler_leases (name, owner, expires_at) "
+                + "VALUES (?, ?, CURRENT_TIMESTAMP + ? * INTERVAL '1 millisecond') "
+                + "ON CONFLICT (name) DO UPDATE SET owner = EXCLUDED.owner, expires_at = EXCLUDED.expires_at "
+                + "WHERE scheduler_leases.expires_at < CURRENT_TIMESTAMP OR scheduler_leases.owner = EXCLUDED.owner",
+                name, owner, ttlMillis);
+        if (n == 1) {
+            heldUntil.put(name, now + ttlMillis);
+            return true;
+        }
+        heldUntil.remove(name);
+        return false;
+    }
+
+    public void release(String name) {
+        heldUntil.remove(name);
+        jdbcTemplate.update("DELETE FROM scheduler_leases WHERE name = ? AND owner = ?", name, owner);
+    }
+
+    public String owner() {
+        return owner;
+    }
+}
@@ -0,0 +1,208 @@
+package com.medvault.medvault.service;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.medvault.medvault.model.ScheduleSlot;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The one JSON shape of a slot: {id, time, active, version, reservedUntil, reservedBy}.
+ * Slot is what the HTTP layer serializes for schedule and search responses and what
+ * schedule creation accepts, so a hold survives a round trip instead of being dropped by an
+ * untyped copy.
+ *
+ * decode/find/encode work on slot array documents (the legacy doctor_schedules.slots_json)
+ * with Jackson's streaming parser and generator over one shared JsonFactory: no tree, no
+ * Map per slot, and find stops reading at the slot it was asked for. Element rules follow the
+ * V8 backfill: elements without an id are skipped, a missing active means true, and a
+ * reservedUntil/reservedBy that does not parse is treated as no hold.
+ */
+@Component
+public class SlotCodec {
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonPropertyOrder({"id", "time", "active", "version", "reservedUntil", "reservedBy"})
+    public static final class Slot {
+        public final String id;
+        public final String time;
+        public final boolean active;        // false once booked or disabled by the doctor
+        public final Long version;          // absent in legacy documents
+        public final Instant reservedUntil; // null when not held
+        public final Long reservedBy;
+
+        @JsonCreator
+        public Slot(@JsonProperty("id") String id,
+                    @JsonProperty("time") String time,
+                    @JsonProperty("active") Boolean active,
+                    @JsonProperty("version") Long version,
+                    @JsonProperty("reservedUntil") Instant reservedUntil,
+                    @JsonProperty("reservedBy") Long reservedBy) {
+            this.id = id;
+            this.time = time;
+            this.active = active == null || active;
+            this.version = version;
+            this.reservedUntil = reservedUntil;
+            this.reservedBy = reservedUntil == null ? null : reservedBy;
+        }
+
+        public static Slot of(ScheduleSlot slot) {
+            OffsetDateTime until = slot.getReservedUntil();
+            return new Slot(slot.getSlotKey(), slot.getSlotTime(), Boolean.TRUE.equals(slot.getActive()), slot.getVersion(),
+                    until == null ? null : until.toInstant(), slot.getReservedBy());
+        }
+
+        public Slot withActive(boolean active) {
+            return new Slot(id, time, active, version, reservedUntil, reservedBy);
+        }
+    }
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    // All slots of a document, in document order
+    public List<Slot> decode(String json) {
+        List<Slot> out = new ArrayList<>();
+        if (json == null || json.isBlank()) return out;
+        try (JsonParser p = JSON.createParser(json)) {
+            if (!openArray(p)) return out;
+            JsonToken t;
+            while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+                Slot slot = readElement(p, t);
+                if (slot != null) out.add(slot);
+            }
+            return out;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed slots JSON: " + e.getOriginalMessage(), e);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed slots JSON: " + e.getMessage(), e);
+        }
+    }
+
+    // The slot with the given id, or null; elements after it are not parsed
+    public Slot find(String json, String slotId) {
+        if (json == null || json.isBlank() || slotId == null) return null;
+        try (JsonParser p = JSON.createParser(json)) {
+            if (!openArray(p)) return null;
+            JsonToken t;
+            while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+                Slot slot = readElement(p, t);
+                if (slot != null && slotId.equals(slot.id)) return slot;
+            }
+            return null;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed slots JSON: " + e.getOriginalMessage(), e);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed slots JSON: " + e.getMessage(), e);
+        }
+    }
+
+    public String encode(List<Slot> slots) {
+        StringWriter out = new StringWriter(slots.size() * 96 + 2);
+        try (JsonGenerator g = JSON.createGenerator(out)) {
+            g.writeStartArray();
+            for (Slot slot : slots) write(g, slot);
+            g.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    private static void write(JsonGenerator g, Slot slot) throws IOException {
+        g.writeStartObject();
+        g.writeStringField("id", slot.id);
+        if (slot.time != null) g.writeStringField("time", slot.time);
+        g.writeBooleanField("active", slot.active);
+        if (slot.version != null) g.writeNumberField("version", slot.version);
+        if (slot.reservedUntil != null) {
+            g.writeStringField("reservedUntil", slot.reservedUntil.toString());
+            if (slot.reservedBy != null) g.writeNumberField("reservedBy", slot.reservedBy);
+        }
+        g.writeEndObject();
+    }
+
+    // false for an empty or "null" document
+    private static boolean openArray(JsonParser p) throws IOException {
+        JsonToken t = p.nextToken();
+        if (t == null || t == JsonToken.VALUE_NULL) return false;
+        if (t != JsonToken.START_ARRAY) throw new IllegalArgumentException("Slots JSON must be an array");
+        return true;
+    }
+
+    // One array element; non-objects and objects without an id yield null
+    private static Slot readElement(JsonParser p, JsonToken t) throws IOException {
+        if (t != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return null;
+        }
+        String id = null;
+        String time = null;
+        Boolean active = null;
+        Long version = null;
+        Instant reservedUntil = null;
+        Long reservedBy = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            if (value.isStructStart()) {
+                p.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case "id":
+                    id = value != JsonToken.VALUE_NULL ? p.getValueAsString() : null;
+                    break;
+                case "time":
+                    time = value == JsonToken.VALUE_STRING ? p.getText() : null;
+                    break;
+                case "active":
+                    if (value.isBoolean()) active = p.getBooleanValue();
+                    else if (value == JsonToken.VALUE_STRING) active = Boolean.parseBoolean(p.getText().trim());
+                    break;
+                case "version":
+                    if (value.isNumeric()) version = p.getLongValue();
+                    break;
+                case "reservedUntil":
+                    reservedUntil = value == JsonToken.VALUE_STRING ? instant(p.getText()) : null;
+                    break;
+                case "reservedBy":
+                    reservedBy = value != JsonToken.VALUE_NULL ? number(p.getValueAsString()) : null;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return id == null ? null : new Slot(id, time, active, version, reservedUntil, reservedBy);
+    }
+
+    private static Instant instant(String text) {
+        try {
+            return OffsetDateTime.parse(text.trim()).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static Long number(String text) {
+        try {
+            return Long.valueOf(text.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.medvault.medvault.service;
+
+import com.medvault.medvault.service.ScheduleSlotService.Outcome;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * In-memory slot states of one doctor-day. Each slot's state is a single immutable value
+ * replaced by compareAndSet, so "booked", the hold and the version always change together
+ * and a losing contender is turned away without taking a lock. The version increases with
+ * every transition and is what the write-behind flusher uses to apply changes in order.
+ *
+ * A transition made for a transaction carries that transaction as its owner until commit
+ * or undo. Only the owner may move such a slot on, others get CONFLICT, so an undo always
+ * finds the state it left and a rollback can never erase someone else's change.
+ */
+public final class SlotDay {
+
+    public static final class State {
+        public final boolean active;       // false once booked or disabled by the doctor
+        public final boolean removed;
+        public final long holdUntil;       // epoch millis, 0 when not held
+        public final long holder;
+        public final long version;
+        final Object owner;                // the uncommitted transaction that made this state, else null
+
+        State(boolean active, boolean removed, long holdUntil, long holder, long version, Object owner) {
+            this.active = active;
+            this.removed = removed;
+            this.holdUntil = holdUntil;
+            this.holder = holder;
+            this.version = version;
+            this.owner = owner;
+        }
+
+        public boolean uncommitted() {
+            return owner != null;
+        }
+
+        boolean heldByOther(long patient, long now) {
+            return holdUntil > now && holder != patient;
+        }
+    }
+
+    private final long scheduleId;
+    private final LocalDate date;
+    private final String[] keys;
+    private final Map<String, Integer> index;
+    private final AtomicReferenceArray<State> states;
+
+    public SlotDay(long scheduleId, LocalDate date, String[] keys, boolean[] active, long[] holdUntil, long[] holder, long[] version) {
+        this.scheduleId = scheduleId;
+        this.date = date;
+        this.keys = keys.clone();
+        this.index = new HashMap<>(keys.length * 2);
+        this.states = new AtomicReferenceArray<>(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            index.put(keys[i], i);
+            states.set(i, new State(active[i], false, holdUntil[i], holder[i], version[i], null));
+        }
+    }
+
+    public long scheduleId() { return scheduleId; }
+    public LocalDate date() { return date; }
+    public int size() { return keys.length; }
+    public String key(int i) { return keys[i]; }
+    public State state(int i) { return states.get(i); }
+
+    // -1 when the key is unknown
+    public int indexOf(String key) {
+        Integer i = index.get(key);
+        return i == null ? -1 : i;
+    }
+
+    public static final class Transition {
+        public final Outcome outcome;
+        public final State before;
+        public final State after;
+
+        Transition(Outcome outcome, State before, State after) {
+            this.outcome = outcome;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    private static boolean lockedByOther(State s, Object owner) {
+        return s.owner != null && s.owner != owner;
+    }
+
+    public Transition book(int i, long patient, long now) {
+        return book(i, patient, now, null);
+    }
+
+    // Same rules as SlotWriter.book: the patient's own live hold may be converted
+    public Transition book(int i, long patient, long now, Object owner) {
+        while (true) {
+            State s = states.get(i);
+            if (lockedByOther(s, owner)) return new Transition(Outcome.CONFLICT, s, s);
+            if (s.removed) return new Transition(Outcome.SLOT_NOT_FOUND, s, s);
+            if (!s.active) return new Transition(Outcome.UNAVAILABLE, s, s);
+            if (s.heldByOther(patient, now)) return new Transition(Outcome.HELD, s, s);
+            State next = new State(false, false, 0, 0, s.version + 1, owner);
+            if (states.compareAndSet(i, s, next)) return new Transition(Outcome.OK, s, next);
+        }
+    }
+
+    public Transition reserve(int i, long patient, long until, long now) {
+        return reserve(i, patient, until, now, null);
+    }
+
+    public Transition reserve(int i, long patient, long until, long now, Object owner) {
+        while (true) {
+            State s = states.get(i);
+            if (lockedByOther(s, owner)) return new Transition(Outcome.CONFLICT, s, s);
+            if (s.removed) return new Transition(Outcome.SLOT_NOT_FOUND, s, s);
+            if (!s.active) return new Transition(Outcome.UNAVAILABLE, s, s);
+            if (s.holdUntil > now) return new Transition(Outcome.HELD, s, s);
+            State next = new State(true, false, until, patient, s.version + 1, owner);
+            if (states.compareAndSet(i, s, next)) return new Transition(Outcome.OK, s, next);
+        }
+    }
+
+    public Transition setActive(int i, Boolean active, boolean clearHold, long now) {
+        return setActive(i, active, clearHold, now, null);
+    }
+
+    // active == null flips; release is setActive(true) plus clearing any hold. An expired hold
+    // is dropped too: the hold sweeper has cleared it from the row and it must not be written back.
+    public Transition setActive(int i, Boolean active, boolean clearHold, long now, Object owner) {
+        while (true) {
+            State s = states.get(i);
+            if (lockedByOther(s, owner)) return new Transition(Outcome.CONFLICT, s, s);
+            if (s.removed) return new Transition(Outcome.SLOT_NOT_FOUND, s, s);
+            boolean a = active == null ? !s.active : active;
+            State next = clearHold || s.holdUntil <= now
+                    ? new State(a, false, 0, 0, s.version + 1, owner)
+                    : new State(a, false, s.holdUntil, s.holder, s.version + 1, owner);
+            if (states.compareAndSet(i, s, next)) return new Transition(Outcome.OK, s, next);
+        }
+    }
+
+    public Transition remove(int i) {
+        return remove(i, null);
+    }
+
+    public Transition remove(int i, Object owner) {
+        while (true) {
+            State s = states.get(i);
+            if (lockedByOther(s, owner)) return new Transition(Outcome.CONFLICT, s, s);
+            if (s.removed) return new Transition(Outcome.SLOT_NOT_FOUND, s, s);
+            State next = new State(false, true, 0, 0, s.version + 1, owner);
+            if (states.compareAndSet(i, s, next)) return new Transition(Outcome.OK, s, next);
+        }
+    }
+
+    // Put a transition back when the transaction that recorded it rolled back. Undo a
+    // transaction's transitions newest first; each then finds the state it produced.
+    public boolean undo(int i, Transition t) {
+        return t.before != t.after && states.compareAndSet(i, t.after, t.before);
+    }
+
+    // The owning transaction committed: release the slot to everyone else. False when the
+    // owner has moved the slot on since; its later transition is committed in its turn.
+    public boolean commit(int i, Transition t) {
+        State s = t.after;
+        return s.owner != null
+                && states.compareAndSet(i, s, new State(s.active, s.removed, s.holdUntil, s.holder, s.version, null));
+    }
+
+    // Slots a patient could book right now
+    public int freeCount(long now) {
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            State s = states.get(i);
+            if (s.active && !s.removed && s.holdUntil <= now) n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,353 @@
+package com.medvault.medvault.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server-Sent Events of slot state changes (booked, released, held, toggled, ...), so the
+ * booking page can stop polling /available. Events are published after the writing
+ * transaction commits and fanned out in-process to the subscribers whose filter matches.
+ *
+ * An idle subscriber is just an SseEmitter on an async request: no thread is parked per
+ * connection. Each subscriber has its own queue drained on a small shared pool, so a slow
+ * client delays only itself; one that falls too far behind is disconnected and resumes on
+ * reconnect. The last slots.feed.buffer-size events are kept in a ring for
+ * Last-Event-ID resume; a client asking for something older gets a "reset" event and should
+ * reload the availability listing.
+ *
+ * Event ids are "<epoch>-<sequence>", the epoch being random per process. An id from before a
+ * restart or from another node (a reconnect routed elsewhere) has a different epoch and is
+ * answered with "reset" instead of being mistaken for a position in this node's sequence.
+ *
+ * The feed carries the changes made through this instance (as with booking.engine).
+ */
+@Service
+public class SlotEventFeed {
+
+    public static final class Event {
+        public final long id;
+        public final String type;
+        public final long scheduleId;
+        public final String slotId;
+        public final Long doctorUserId;
+        public final String specialization;
+        public final LocalDate date;
+        public final Boolean active; // null when the change does not say
+        public final String time;
+
+        Event(long id, String type, long scheduleId, String slotId, ScheduleInfo info, Boolean active, String time) {
+            this.id = id;
+            this.type = type;
+            this.scheduleId = scheduleId;
+            this.slotId = slotId;
+            this.doctorUserId = info.doctorUserId;
+            this.specialization = info.specialization;
+            this.date = info.date;
+            this.active = active;
+            this.time = time;
+        }
+
+        Map<String, Object> data() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("type", type);
+            m.put("scheduleId", scheduleId);
+            m.put("slotId", slotId);
+            m.put("doctorUserId", doctorUserId);
+            m.put("specialization", specialization);
+            m.put("date", date == null ? null : date.toString());
+            if (active != null) m.put("active", active);
+            if (time != null) m.put("time", time);
+            return m;
+        }
+    }
+
+    // Which events a subscriber wants; null fields match everything
+    public static final class Filter {
+        public Long doctorUserId;
+        public String specialization;
+        public LocalDate from;
+        public LocalDate to;
+
+        boolean matches(Event e) {
+            if (doctorUserId != null && !doctorUserId.equals(e.doctorUserId)) return false;
+            if (specialization != null && !specialization.equalsIgnoreCase(e.specialization)) return false;
+            if (from != null && (e.date == null || e.date.isBefore(from))) return false;
+            return to == null || (e.date != null && !e.date.isAfter(to));
+        }
+    }
+
+    private static final class ScheduleInfo {
+        static final ScheduleInfo UNKNOWN = new ScheduleInfo(null, null, null);
+        final Long doctorUserId;
+        final String specialization;
+        final LocalDate date;
+
+        ScheduleInfo(Long doctorUserId, String specialization, LocalDate date) {
+            this.doctorUserId = doctorUserId;
+            this.specialization = specialization;
+            this.date = date;
+        }
+    }
+
+    private static final String RESET = "reset";
+    private static final Event HEARTBEAT = new Event(0, "heartbeat", 0, null, ScheduleInfo.UNKNOWN, null, null);
+
+    private final class Subscriber {
+        final SseEmitter emitter;
+        final Filter filter;
+        final Queue<Event> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicBoolean draining = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter, Filter filter) {
+            this.emitter = emitter;
+            this.filter = filter;
+        }
+
+        void offer(Event e) {
+            if (queued.incrementAndGet() > maxQueued) {
+                dropped.increment();
+                close(this); // reconnects with Last-Event-ID and catches up from the ring
+                return;
+            }
+            queue.add(e);
+            if (draining.compareAndSet(false, true)) dispatcher.execute(this::drain);
+        }
+
+        void drain() {
+            try {
+                for (Event e; (e = queue.poll()) != null; ) {
+                    queued.decrementAndGet();
+                    if (e == HEARTBEAT) {
+                        emitter.send(SseEmitter.event().comment("keep-alive"));
+                    } else if (RESET.equals(e.type)) {
+                        emitter.send(SseEmitter.event().id(eventId(e.id)).name(RESET).data(Map.of("type", RESET)));
+                    } else {
+                        emitter.send(SseEmitter.event().id(eventId(e.id)).name(e.type).data(e.data()));
+                        delivered.increment();
+                    }
+                }
+            } catch (IOException | IllegalStateException gone) {
+                close(this);
+                return;
+            } finally {
+                draining.set(false);
+            }
+            // an event queued after the last poll but before draining was cleared
+            if (!queue.isEmpty() && draining.compareAndSet(false, true)) dispatcher.execute(this::drain);
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String epoch = Long.toString(new SecureRandom().nextLong() & Long.MAX_VALUE, 36);
+    private final int maxSubscribers;
+    private final int maxQueued;
+    private final long timeoutMillis;
+    private final Event[] ring;
+    private long nextId = 1; // guarded by this, with ring
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService dispatcher;
+    private final Map<Long, ScheduleInfo> schedules;
+    // bumped on every eviction so a lookup that raced with a specialization fill is not cached
+    private long scheduleEvictions; // guarded by schedules
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder resumes = new LongAdder();
+    private final LongAdder resets = new LongAdder();
+
+    public SlotEventFeed(JdbcTemplate jdbcTemplate,
+                         @Value("${slots.feed.buffer-size:10000}") int bufferSize,
+                         @Value("${slots.feed.max-subscribers:10000}") int maxSubscribers,
+                         @Value("${slots.feed.max-queued:1000}") int maxQueued,
+                         @Value("${slots.feed.timeout-ms:1800000}") long timeoutMillis,
+                         @Value("${slots.feed.dispatch-threads:8}") int dispatchThreads) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ring = new Event[Math.max(1, bufferSize)];
+        this.maxSubscribers = maxSubscribers;
+        this.maxQueued = maxQueued;
+        this.timeoutMillis = timeoutMillis;
+        AtomicInteger seq = new AtomicInteger();
+        this.dispatcher = Executors.newFixedThreadPool(Math.max(1, dispatchThreads), r -> {
+            Thread t = new Thread(r, "slot-feed-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.schedules = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ScheduleInfo> eldest) {
+                return size() > 10_000;
+            }
+        };
+    }
+
+    /**
+     * Subscribes with the given filter. lastEventId (from the Last-Event-ID header on an
+     * EventSource reconnect) replays the buffered events after it; an id this process did not
+     * issue gets a "reset". Returns null when the subscriber limit is reached.
+     */
+    public SseEmitter subscribe(Filter filter, String lastEventId) {
+        if (subscribers.size() >= maxSubscribers) return null;
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber sub = new Subscriber(emitter, filter);
+        emitter.onCompletion(() -> subscribers.remove(sub));
+        emitter.onTimeout(() -> close(sub));
+        emitter.onError(e -> close(sub));
+        synchronized (this) {
+            // registered and caught up under the publish lock, so nothing is missed or sent twice
+            if (lastEventId != null && !lastEventId.isBlank()) {
+                resumes.increment();
+                // -1: not an id of this process (restart, another node, malformed), so unknown
+                long last = sequenceOf(lastEventId);
+                long oldest = Math.max(1, nextId - ring.length);
+                List<Event> missed = new ArrayList<>();
+                if (last >= 0) {
+                    for (long id = Math.max(last + 1, oldest); id < nextId; id++) {
+                        Event e = ring[(int) (id % ring.length)];
+                        if (filter.matches(e)) missed.add(e);
+                    }
+                }
+                if (last < 0 || last + 1 < oldest || missed.size() >= maxQueued) {
+                    // too far behind to replay; the client reloads the listing and continues from here
+                    resets.increment();
+                    sub.offer(new Event(nextId - 1, RESET, 0, null, ScheduleInfo.UNKNOWN, null, null));
+                } else {
+                    for (Event e : missed) sub.offer(e);
+                }
+            }
+            subscribers.add(sub);
+        }
+        return emitter;
+    }
+
+    private String eventId(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+    // The sequence of an id issued by this process and not beyond the last event, else -1; caller holds the lock
+    private long sequenceOf(String eventId) {
+        String id = eventId.trim();
+        int dash = id.lastIndexOf('-');
+        if (dash <= 0 || !id.substring(0, dash).equals(epoch)) return -1;
+        try {
+            long sequence = Long.parseLong(id.substring(dash + 1));
+            return sequence >= 0 && sequence < nextId ? sequence : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Called from the write paths; delivered once the surrounding transaction commits
+    public void slotChanged(String type, Long scheduleId, String slotId, Boolean active, String time) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(type, scheduleId, slotId, active, time);
+                }
+            });
+        } else {
+            publish(type, scheduleId, slotId, active, time);
+        }
+    }
+
+    private void publish(String type, Long scheduleId, String slotId, Boolean active, String time) {
+        ScheduleInfo info = info(scheduleId);
+        synchronized (this) {
+            Event e = new Event(nextId, type, scheduleId, slotId, info, active, time);
+            ring[(int) (nextId % ring.length)] = e;
+            nextId++;
+            published.increment();
+            for (Subscriber sub : subscribers) {
+                if (sub.filter.matches(e)) sub.offer(e);
+            }
+        }
+    }
+
+    // doctor and date of a schedule never change, so they are cached for filtering; a blank
+    // specialization is filled from the profile later, which evicts the doctor's entries
+    private ScheduleInfo info(Long scheduleId) {
+        long seenEvictions;
+        synchronized (schedules) {
+            ScheduleInfo known = schedules.get(scheduleId);
+            if (known != null) return known;
+            seenEvictions = scheduleEvictions;
+        }
+        List<ScheduleInfo> rows = jdbcTemplate.query("SELECT doctor_user_id, specialization, date FROM doctor_schedules WHERE id = ?",
+                (rs, n) -> {
+                    Date date = rs.getDate("date");
+                    Number doctor = (Number) rs.getObject("doctor_user_id");
+                    return new ScheduleInfo(doctor == null ? null : doctor.longValue(), rs.getString("specialization"),
+                            date == null ? null : date.toLocalDate());
+                }, scheduleId);
+        if (rows.isEmpty()) return ScheduleInfo.UNKNOWN;
+        synchronized (schedules) {
+            if (seenEvictions == scheduleEvictions) schedules.put(scheduleId, rows.get(0));
+        }
+        return rows.get(0);
+    }
+
+    // The doctor's schedules changed specialization (see DoctorService.createOrUpdateDoctor)
+    public void evictDoctor(Long doctorUserId) {
+        synchronized (schedules) {
+            schedules.values().removeIf(info -> doctorUserId.equals(info.doctorUserId));
+            scheduleEvictions++;
+        }
+    }
+
+    // Keeps idle connections open through proxies and notices clients that went away
+    @Scheduled(fixedDelayString = "${slots.feed.heartbeat-ms:20000}")
+    public void heartbeat() {
+        for (Subscriber sub : subscribers) sub.offer(HEARTBEAT);
+    }
+
+    private void close(Subscriber sub) {
+        if (subscribers.remove(sub)) {
+            try {
+                sub.emitter.complete();
+            } catch (RuntimeException ignored) {
+                // already completed by the container
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Subscriber sub : subscribers) close(sub);
+        dispatcher.shutdown();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("subscribers", subscribers.size());
+        synchronized (this) {
+            m.put("lastEventId", eventId(nextId - 1));
+        }
+        m.put("published", published.sum());
+        m.put("delivered", delivered.sum());
+        m.put("droppedSlowSubscribers", dropped.sum());
+        m.put("resumes", resumes.sum());
+        m.put("resets", resets.sum());
+        return m;
+    }
+}
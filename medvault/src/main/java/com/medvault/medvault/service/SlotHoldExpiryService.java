@@ -0,0 +1,176 @@
+package com.medvault.medvault.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Releases slot holds (reserveSlot) when they expire instead of leaving reserved_until to be
+ * ignored lazily. Outstanding holds sit in a DelayQueue ordered by expiry; each sweep drains
+ * the due ones and clears them in one JDBC batch, guarded by holder and expiry so a slot
+ * that was booked or re-held in the meantime is left alone.
+ *
+ * Only the node holding the "slot-hold-sweeper" lease writes. It reloads every outstanding
+ * hold from schedule_slots when it takes the lease (which covers restarts) and periodically
+ * after that, to pick up holds placed through other nodes.
+ */
+@Service
+public class SlotHoldExpiryService {
+
+    private static final String LEASE = "slot-hold-sweeper";
+
+    private static final class Hold implements Delayed {
+        final String ref;
+        final long scheduleId;
+        final String slotKey;
+        final long holder;
+        final long until; // epoch millis
+
+        Hold(long scheduleId, String slotKey, long holder, long until) {
+            this.ref = scheduleId + "/" + slotKey;
+            this.scheduleId = scheduleId;
+            this.slotKey = slotKey;
+            this.holder = holder;
+            this.until = until;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(until - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(until, ((Hold) o).until);
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SchedulerLease lease;
+    private final SlotEventFeed events;
+    private final long leaseTtlMillis;
+    private final long reloadMillis;
+    private final int batchSize;
+
+    private final DelayQueue<Hold> queue = new DelayQueue<>();
+    // live entry per slot; a queued Hold no longer in here was converted, released or replaced
+    private final ConcurrentHashMap<String, Hold> tracked = new ConcurrentHashMap<>();
+    private volatile boolean leader;
+    private long lastReload;
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder converted = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder reloaded = new LongAdder();
+
+    public SlotHoldExpiryService(JdbcTemplate jdbcTemplate, SchedulerLease lease, SlotEventFeed events,
+                                 @Value("${booking.holds.lease-ttl-ms:15000}") long leaseTtlMillis,
+                                 @Value("${booking.holds.reload-ms:10000}") long reloadMillis,
+                                 @Value("${booking.holds.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.lease = lease;
+        this.events = events;
+        this.leaseTtlMillis = leaseTtlMillis;
+        this.reloadMillis = reloadMillis;
+        this.batchSize = batchSize;
+    }
+
+    public void onReserved(Long scheduleId, String slotKey, Long holder, long untilMillis) {
+        created.increment();
+        track(new Hold(scheduleId, slotKey, holder == null ? 0 : holder, untilMillis));
+    }
+
+    // A booking by the holder while the hold was live counts as a conversion
+    public void onBooked(Long scheduleId, String slotKey, Long patientUserId) {
+        Hold h = tracked.remove(scheduleId + "/" + slotKey);
+        if (h != null && h.holder == (patientUserId == null ? 0 : patientUserId) && h.until > System.currentTimeMillis()) {
+            converted.increment();
+        }
+    }
+
+    public void onReleased(Long scheduleId, String slotKey) {
+        tracked.remove(scheduleId + "/" + slotKey);
+    }
+
+    private void track(Hold h) {
+        tracked.put(h.ref, h);
+        queue.add(h);
+    }
+
+    @Scheduled(fixedDelayString = "${booking.holds.sweep-ms:1000}")
+    public void sweep() {
+        if (!lease.tryAcquire(LEASE, leaseTtlMillis)) {
+            leader = false;
+            // another node clears them; just keep the local queue from growing
+            for (Hold h; (h = queue.poll()) != null; ) tracked.remove(h.ref, h);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!leader || now - lastReload >= reloadMillis) {
+            reload();
+            lastReload = now;
+        }
+        leader = true;
+
+        List<Hold> due = new ArrayList<>(batchSize);
+        for (Hold h; (h = queue.poll()) != null; ) {
+            if (!tracked.remove(h.ref, h)) continue; // superseded
+            due.add(h);
+            if (due.size() == batchSize) {
+                releaseBatch(due);
+                due.clear();
+            }
+        }
+        if (!due.isEmpty()) releaseBatch(due);
+    }
+
+    private void releaseBatch(List<Hold> due) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<Object[]> args = new ArrayList<>(due.size());
+        for (Hold h : due) args.add(new Object[] {h.scheduleId, h.slotKey, h.holder, now});
+        int[] counts = jdbcTemplate.batchUpdate("UPDATE schedule_slots SET reserved_until = NULL, reserved_by = NULL, version = version + 1 "
+                + "WHERE schedule_id = ? AND slot_key = ? AND COALESCE(reserved_by, 0) = ? AND reserved_until <= ?", args);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] <= 0) continue;
+            expired.add(counts[i]);
+            events.slotChanged("hold-expired", due.get(i).scheduleId, due.get(i).slotKey, null, null);
+        }
+    }
+
+    // Every hold still recorded in the database, including expired ones nobody has cleared
+    private void reload() {
+        jdbcTemplate.query("SELECT schedule_id, slot_key, reserved_by, reserved_until FROM schedule_slots "
+                + "WHERE reserved_until IS NOT NULL", rs -> {
+            long scheduleId = rs.getLong("schedule_id");
+            String slotKey = rs.getString("slot_key");
+            long holder = rs.getLong("reserved_by");
+            long until = rs.getObject("reserved_until", OffsetDateTime.class).toInstant().toEpochMilli();
+            Hold known = tracked.get(scheduleId + "/" + slotKey);
+            if (known == null || known.until != until || known.holder != holder) {
+                track(new Hold(scheduleId, slotKey, holder, until));
+                reloaded.increment();
+            }
+        });
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("leader", leader);
+        m.put("outstanding", tracked.size());
+        m.put("created", created.sum());
+        m.put("convertedToBooking", converted.sum());
+        m.put("expired", expired.sum());
+        m.put("reloaded", reloaded.sum());
+        return m;
+    }
+}
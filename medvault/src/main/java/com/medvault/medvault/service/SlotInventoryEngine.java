@@ -0,0 +1,326 @@
+package com.medvault.medvault.service;
+
+import com.medvault.medvault.model.DoctorSchedule;
+import com.medvault.medvault.model.ScheduleSlot;
+import com.medvault.medvault.repository.DoctorScheduleRepository;
+import com.medvault.medvault.repository.ScheduleSlotRepository;
+import com.medvault.medvault.service.ScheduleSlotService.Outcome;
+import com.medvault.medvault.service.SlotDay.Transition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional booking engine (booking.engine.enabled) for doctor-days that open to a rush of
+ * patients at once. Slot states are held in memory per doctor-day (SlotDay) and claimed by
+ * compare-and-set, so contenders that lose are answered without touching the database.
+ * Every successful transition is written to slot_outbox in the caller's transaction (the
+ * same one that inserts or cancels the appointment) and undone in memory if that
+ * transaction rolls back; a flusher copies outbox rows into schedule_slots in batches.
+ * Until the transaction completes the slot belongs to it: other requests touching the slot
+ * get CONFLICT rather than building on a change that may still be rolled back.
+ *
+ * A doctor-day is loaded on first use from schedule_slots with any unflushed outbox rows
+ * laid over it, which is also how state is recovered after a restart. The engine owns slot
+ * state for the days it has loaded, so enable it only where a single instance serves
+ * booking traffic.
+ */
+@Service
+public class SlotInventoryEngine {
+
+    private static final class OutboxRow {
+        long id;
+        long scheduleId;
+        String slotKey;
+        boolean active;
+        boolean removed;
+        OffsetDateTime reservedUntil;
+        Long reservedBy;
+        long version;
+    }
+
+    private final boolean enabled;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ScheduleSlotRepository slotRepository;
+    private final DoctorScheduleRepository scheduleRepository;
+    private final ScheduleCounters counters;
+    private final AppointmentTimes appointmentTimes;
+    private final int flushBatchSize;
+    private final ConcurrentHashMap<Long, SlotDay> days = new ConcurrentHashMap<>();
+
+    private final LongAdder booked = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder undone = new LongAdder();
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder flushed = new LongAdder();
+    private final LongAdder flushedStale = new LongAdder();
+
+    public SlotInventoryEngine(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                               ScheduleSlotRepository slotRepository, DoctorScheduleRepository scheduleRepository,
+                               ScheduleCounters counters, AppointmentTimes appointmentTimes,
+                               @Value("${booking.engine.enabled:false}") boolean enabled,
+                               @Value("${booking.engine.flush-batch:500}") int flushBatchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.slotRepository = slotRepository;
+        this.scheduleRepository = scheduleRepository;
+        this.counters = counters;
+        this.appointmentTimes = appointmentTimes;
+        this.enabled = enabled;
+        this.flushBatchSize = flushBatchSize;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Outcome book(Long scheduleId, String slotKey, Long patientUserId) {
+        long patient = patientUserId == null ? 0 : patientUserId;
+        Outcome outcome = apply(scheduleId, slotKey, (day, i, owner) -> day.book(i, patient, System.currentTimeMillis(), owner));
+        if (outcome == Outcome.OK) booked.increment();
+        return outcome;
+    }
+
+    public Outcome reserve(Long scheduleId, String slotKey, Long patientUserId, long untilMillis) {
+        long patient = patientUserId == null ? 0 : patientUserId;
+        return apply(scheduleId, slotKey, (day, i, owner) -> day.reserve(i, patient, untilMillis, System.currentTimeMillis(), owner));
+    }
+
+    public Outcome release(Long scheduleId, String slotKey) {
+        return apply(scheduleId, slotKey, (day, i, owner) -> day.setActive(i, true, true, System.currentTimeMillis(), owner));
+    }
+
+    public Outcome setActive(Long scheduleId, String slotKey, Boolean active) {
+        return apply(scheduleId, slotKey, (day, i, owner) -> day.setActive(i, active, false, System.currentTimeMillis(), owner));
+    }
+
+    public Outcome remove(Long scheduleId, String slotKey) {
+        return apply(scheduleId, slotKey, (day, i, owner) -> day.remove(i, owner));
+    }
+
+    private interface Op {
+        Transition apply(SlotDay day, int i, Object owner);
+    }
+
+    // The transitions one transaction made, in order; the instance is also their owner token
+    private final class Pending implements TransactionSynchronization {
+        final List<SlotDay> days = new ArrayList<>();
+        final List<Integer> slots = new ArrayList<>();
+        final List<Transition> transitions = new ArrayList<>();
+
+        void add(SlotDay day, int i, Transition t) {
+            days.add(day);
+            slots.add(i);
+            transitions.add(t);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(SlotInventoryEngine.this);
+            if (status == STATUS_COMMITTED) {
+                for (int k = 0; k < transitions.size(); k++) days.get(k).commit(slots.get(k), transitions.get(k));
+            } else {
+                // newest first, so each undo finds the state its transition produced
+                for (int k = transitions.size() - 1; k >= 0; k--) {
+                    if (days.get(k).undo(slots.get(k), transitions.get(k))) undone.increment();
+                }
+            }
+        }
+    }
+
+    private Pending pending() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return null;
+        Pending p = (Pending) TransactionSynchronizationManager.getResource(this);
+        if (p == null) {
+            p = new Pending();
+            TransactionSynchronizationManager.bindResource(this, p);
+            TransactionSynchronizationManager.registerSynchronization(p);
+        }
+        return p;
+    }
+
+    // Must run inside the caller's transaction so the outbox row commits with it; without one
+    // the transition is committed at once
+    private Outcome apply(Long scheduleId, String slotKey, Op op) {
+        SlotDay day = day(scheduleId);
+        if (day == null) return Outcome.SCHEDULE_NOT_FOUND;
+        int i = day.indexOf(slotKey);
+        if (i < 0) return Outcome.SLOT_NOT_FOUND;
+        Pending pending = pending();
+        Transition t = op.apply(day, i, pending);
+        if (t.outcome != Outcome.OK) {
+            rejected.increment();
+            return t.outcome;
+        }
+        try {
+            record(day, i, t.after);
+        } catch (RuntimeException ex) {
+            if (day.undo(i, t)) undone.increment();
+            throw ex;
+        }
+        if (pending != null) pending.add(day, i, t);
+        return Outcome.OK;
+    }
+
+    private void record(SlotDay day, int i, SlotDay.State s) {
+        jdbcTemplate.update("INSERT INTO slot_outbox (schedule_id, slot_key, active, removed, reserved_until, reserved_by, state_version) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?)",
+                day.scheduleId(), day.key(i), s.active, s.removed,
+                s.holdUntil == 0 ? null : OffsetDateTime.ofInstant(Instant.ofEpochMilli(s.holdUntil), ZoneOffset.UTC),
+                s.holdUntil == 0 ? null : s.holder,
+                s.version);
+        recorded.increment();
+    }
+
+    private SlotDay day(Long scheduleId) {
+        SlotDay day = days.get(scheduleId);
+        if (day != null) return day;
+        SlotDay loaded = load(scheduleId);
+        if (loaded == null) return null; // unknown schedules are not remembered, they may be created later
+        SlotDay raced = days.putIfAbsent(scheduleId, loaded);
+        return raced != null ? raced : loaded;
+    }
+
+    // schedule_slots overlaid with outbox rows that have not been flushed yet
+    private SlotDay load(Long scheduleId) {
+        Optional<DoctorSchedule> schedule = scheduleRepository.findById(scheduleId);
+        if (schedule.isEmpty()) return null;
+        Map<String, OutboxRow> pending = new HashMap<>();
+        for (OutboxRow r : pendingRows("WHERE schedule_id = ? ORDER BY id", scheduleId)) {
+            OutboxRow prev = pending.get(r.slotKey);
+            if (prev == null || r.version > prev.version) pending.put(r.slotKey, r);
+        }
+
+        List<ScheduleSlot> slots = slotRepository.findByScheduleIdOrderByPositionAsc(scheduleId);
+        List<String> keys = new ArrayList<>(slots.size());
+        List<long[]> values = new ArrayList<>(slots.size()); // active, holdUntil, holder, version
+        for (ScheduleSlot slot : slots) {
+            long version = slot.getStateVersion() == null ? 0 : slot.getStateVersion();
+            long[] v = {
+                    Boolean.TRUE.equals(slot.getActive()) ? 1 : 0,
+                    slot.getReservedUntil() == null ? 0 : slot.getReservedUntil().toInstant().toEpochMilli(),
+                    slot.getReservedBy() == null ? 0 : slot.getReservedBy(),
+                    version};
+            OutboxRow r = pending.get(slot.getSlotKey());
+            if (r != null && r.version > version) {
+                if (r.removed) continue;
+                v = new long[] {
+                        r.active ? 1 : 0,
+                        r.reservedUntil == null ? 0 : r.reservedUntil.toInstant().toEpochMilli(),
+                        r.reservedBy == null ? 0 : r.reservedBy,
+                        r.version};
+            }
+            keys.add(slot.getSlotKey());
+            values.add(v);
+        }
+
+        int n = keys.size();
+        boolean[] active = new boolean[n];
+        long[] holdUntil = new long[n];
+        long[] holder = new long[n];
+        long[] version = new long[n];
+        for (int i = 0; i < n; i++) {
+            long[] v = values.get(i);
+            active[i] = v[0] == 1;
+            holdUntil[i] = v[1];
+            holder[i] = v[2];
+            version[i] = v[3];
+        }
+        return new SlotDay(scheduleId, schedule.get().getDate(), keys.toArray(new String[0]), active, holdUntil, holder, version);
+    }
+
+    // Copy outbox rows into schedule_slots; a row older than what the slot already holds is dropped
+    @Scheduled(fixedDelayString = "${booking.engine.flush-ms:200}")
+    public void flush() {
+        if (!enabled) return;
+        int n;
+        do {
+            Integer applied = transactionTemplate.execute(status -> flushBatch());
+            n = applied == null ? 0 : applied;
+        } while (n == flushBatchSize);
+    }
+
+    private int flushBatch() {
+        List<OutboxRow> rows = pendingRows("ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED", flushBatchSize);
+        if (rows.isEmpty()) return 0;
+        List<Object[]> updates = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        List<Object[]> done = new ArrayList<>(rows.size());
+        Set<Long> touched = new HashSet<>();
+        for (OutboxRow r : rows) {
+            touched.add(r.scheduleId);
+            if (r.removed) {
+                deletes.add(new Object[] {r.scheduleId, r.slotKey, r.version});
+            } else {
+                updates.add(new Object[] {r.active, r.reservedUntil, r.reservedBy, r.version, r.scheduleId, r.slotKey, r.version});
+            }
+            done.add(new Object[] {r.id});
+        }
+        int applied = 0;
+        if (!updates.isEmpty()) {
+            for (int c : jdbcTemplate.batchUpdate("UPDATE schedule_slots SET active = ?, reserved_until = ?, reserved_by = ?, state_version = ?, version = version + 1 "
+                    + "WHERE schedule_id = ? AND slot_key = ? AND state_version < ?", updates)) applied += Math.max(c, 0);
+        }
+        if (!deletes.isEmpty()) {
+            for (int c : jdbcTemplate.batchUpdate("DELETE FROM schedule_slots WHERE schedule_id = ? AND slot_key = ? AND state_version < ?",
+                    deletes)) applied += Math.max(c, 0);
+        }
+        jdbcTemplate.batchUpdate("DELETE FROM slot_outbox WHERE id = ?", done);
+        // the counters follow schedule_slots, so they catch up with the flush, in the same transaction
+        counters.refresh(touched);
+        flushed.add(applied);
+        flushedStale.add(rows.size() - applied);
+        return rows.size();
+    }
+
+    private List<OutboxRow> pendingRows(String clause, Object arg) {
+        return jdbcTemplate.query("SELECT id, schedule_id, slot_key, active, removed, reserved_until, reserved_by, state_version "
+                + "FROM slot_outbox " + clause, (rs, rowNum) -> {
+            OutboxRow r = new OutboxRow();
+            r.id = rs.getLong("id");
+            r.scheduleId = rs.getLong("schedule_id");
+            r.slotKey = rs.getString("slot_key");
+            r.active = rs.getBoolean("active");
+            r.removed = rs.getBoolean("removed");
+            r.reservedUntil = rs.getObject("reserved_until", OffsetDateTime.class);
+            long by = rs.getLong("reserved_by");
+            r.reservedBy = rs.wasNull() ? null : by;
+            r.version = rs.getLong("state_version");
+            return r;
+        }, arg);
+    }
+
+    // Past days cannot be booked any more; reload them from the database if ever touched again.
+    // "Past" is judged in the clinic's zone, like the schedule dates themselves.
+    @Scheduled(fixedDelay = 3600000)
+    public void evictPastDays() {
+        LocalDate today = LocalDate.now(appointmentTimes.zone());
+        days.values().removeIf(d -> d.date() != null && d.date().isBefore(today));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", enabled);
+        m.put("loadedDays", days.size());
+        m.put("booked", booked.sum());
+        m.put("rejected", rejected.sum());
+        m.put("undone", undone.sum());
+        m.put("outboxRecorded", recorded.sum());
+        m.put("outboxFlushed", flushed.sum());
+        m.put("outboxStale", flushedStale.sum());
+        return m;
+    }
+}
@@ -0,0 +1,255 @@
+package com.medvault.medvault.service;
+
+import com.medvault.medvault.service.ScheduleSlotService.Outcome;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes to one schedule_slots row, in the concurrency mode set by booking.concurrency.mode:
+ *
+ * pessimistic (default): each change is one UPDATE whose WHERE clause carries the rule, e.g.
+ * "active and not held by someone else". Postgres locks the row for the update, and a writer
+ * that had to wait re-checks the clause against the row the other writer committed, so a
+ * decision is never made on a stale read.
+ *
+ * optimistic: the row is read without a lock, the rule is checked here, and the change is
+ * written with UPDATE ... WHERE version = ?. A writer that lost the race re-reads and tries
+ * again, up to booking.concurrency.max-attempts times with a jittered backoff, and then
+ * gives up with CONFLICT.
+ *
+ * Both modes bump schedule_slots.version on every write, so a client can make a doctor-side
+ * change (toggle, retime, delete) conditional on the version it last saw (expectedVersion)
+ * and get CONFLICT instead of silently overwriting a booking made in between.
+ */
+@Component
+public class SlotWriter {
+
+    public enum Mode { PESSIMISTIC, OPTIMISTIC }
+
+    private static final String WHERE_SLOT = " WHERE schedule_id = ? AND slot_key = ?";
+    private static final String IF_VERSION = " AND version = ?";
+
+    static final String BOOK = "UPDATE schedule_slots SET active = false, reserved_until = NULL, reserved_by = NULL, version = version + 1"
+            + WHERE_SLOT + " AND active = true AND (reserved_until IS NULL OR reserved_until < ? OR reserved_by = ?)";
+    static final String RESERVE = "UPDATE schedule_slots SET reserved_until = ?, reserved_by = ?, version = version + 1"
+            + WHERE_SLOT + " AND active = true AND (reserved_until IS NULL OR reserved_until < ?)";
+    static final String RELEASE = "UPDATE schedule_slots SET active = true, reserved_until = NULL, reserved_by = NULL, version = version + 1"
+            + WHERE_SLOT;
+    static final String SET_ACTIVE = "UPDATE schedule_slots SET active = ?, version = version + 1" + WHERE_SLOT;
+    static final String TOGGLE = "UPDATE schedule_slots SET active = NOT active, version = version + 1" + WHERE_SLOT;
+    static final String SET_TIME = "UPDATE schedule_slots SET slot_time = ?, version = version + 1" + WHERE_SLOT;
+    static final String DELETE = "DELETE FROM schedule_slots" + WHERE_SLOT;
+
+    static final String READ = "SELECT id, active, reserved_until, reserved_by, slot_time, version FROM schedule_slots" + WHERE_SLOT;
+    static final String WRITE_IF_UNCHANGED = "UPDATE schedule_slots SET active = ?, reserved_until = ?, reserved_by = ?, slot_time = ?, "
+            + "version = version + 1 WHERE id = ? AND version = ?";
+    static final String DELETE_IF_UNCHANGED = "DELETE FROM schedule_slots WHERE id = ? AND version = ?";
+
+    // A slot row as read; the optimistic rules edit it into the state to write
+    private static final class Row {
+        long id;
+        boolean active;
+        OffsetDateTime reservedUntil;
+        Long reservedBy;
+        String time;
+        long version;
+
+        boolean heldByOther(Long patientUserId, OffsetDateTime now) {
+            return reservedUntil != null && !reservedUntil.isBefore(now) && (reservedBy == null || !reservedBy.equals(patientUserId));
+        }
+    }
+
+    private interface Rule {
+        Outcome apply(Row row);
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Mode mode;
+    private final int maxAttempts;
+    private final long backoffMillis;
+
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder versionRetries = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+
+    public SlotWriter(JdbcTemplate jdbcTemplate,
+                      @Value("${booking.concurrency.mode:pessimistic}") String mode,
+                      @Value("${booking.concurrency.max-attempts:5}") int maxAttempts,
+                      @Value("${booking.concurrency.backoff-ms:2}") long backoffMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.mode = Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMillis = backoffMillis;
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    // Same rules as SlotDay.book: the patient's own live hold may be converted
+    public Outcome book(long scheduleId, String slotKey, Long patientUserId, OffsetDateTime now) {
+        if (mode == Mode.PESSIMISTIC) {
+            return conditional(scheduleId, slotKey, null, BOOK, scheduleId, slotKey, now, patientUserId);
+        }
+        return compareAndSet(scheduleId, slotKey, null, row -> {
+            if (!row.active) return Outcome.UNAVAILABLE;
+            if (row.heldByOther(patientUserId, now)) return Outcome.HELD;
+            row.active = false;
+            row.reservedUntil = null;
+            row.reservedBy = null;
+            return Outcome.OK;
+        });
+    }
+
+    public Outcome reserve(long scheduleId, String slotKey, Long patientUserId, OffsetDateTime until, OffsetDateTime now) {
+        if (mode == Mode.PESSIMISTIC) {
+            return conditional(scheduleId, slotKey, null, RESERVE, until, patientUserId, scheduleId, slotKey, now);
+        }
+        return compareAndSet(scheduleId, slotKey, null, row -> {
+            if (!row.active) return Outcome.UNAVAILABLE;
+            if (row.reservedUntil != null && !row.reservedUntil.isBefore(now)) return Outcome.HELD;
+            row.reservedUntil = until;
+            row.reservedBy = patientUserId;
+            return Outcome.OK;
+        });
+    }
+
+    public Outcome release(long scheduleId, String slotKey) {
+        if (mode == Mode.PESSIMISTIC) return conditional(scheduleId, slotKey, null, RELEASE, scheduleId, slotKey);
+        return compareAndSet(scheduleId, slotKey, null, row -> {
+            row.active = true;
+            row.reservedUntil = null;
+            row.reservedBy = null;
+            return Outcome.OK;
+        });
+    }
+
+    // active == null flips the current state; a hold is left as it is
+    public Outcome setActive(long scheduleId, String slotKey, Boolean active, Long expectedVersion) {
+        if (mode == Mode.PESSIMISTIC) {
+            return active == null
+                    ? conditional(scheduleId, slotKey, expectedVersion, TOGGLE, scheduleId, slotKey)
+                    : conditional(scheduleId, slotKey, expectedVersion, SET_ACTIVE, active, scheduleId, slotKey);
+        }
+        return compareAndSet(scheduleId, slotKey, expectedVersion, row -> {
+            row.active = active == null ? !row.active : active;
+            return Outcome.OK;
+        });
+    }
+
+    public Outcome updateTime(long scheduleId, String slotKey, String time, Long expectedVersion) {
+        if (mode == Mode.PESSIMISTIC) return conditional(scheduleId, slotKey, expectedVersion, SET_TIME, time, scheduleId, slotKey);
+        return compareAndSet(scheduleId, slotKey, expectedVersion, row -> {
+            row.time = time;
+            return Outcome.OK;
+        });
+    }
+
+    public Outcome delete(long scheduleId, String slotKey, Long expectedVersion) {
+        if (mode == Mode.PESSIMISTIC) return conditional(scheduleId, slotKey, expectedVersion, DELETE, scheduleId, slotKey);
+        for (int attempt = 1; ; attempt++) {
+            Row row = read(scheduleId, slotKey);
+            if (row == null) return reject(Outcome.SLOT_NOT_FOUND);
+            if (expectedVersion != null && row.version != expectedVersion) return conflict();
+            if (jdbcTemplate.update(DELETE_IF_UNCHANGED, row.id, row.version) == 1) return written();
+            if (attempt >= maxAttempts) return conflict();
+            retry(attempt);
+        }
+    }
+
+    // One UPDATE/DELETE with the rule in its WHERE clause; a miss is explained by reading the row
+    private Outcome conditional(long scheduleId, String slotKey, Long expectedVersion, String sql, Object... args) {
+        if (expectedVersion != null) {
+            sql += IF_VERSION;
+            Object[] withVersion = Arrays.copyOf(args, args.length + 1);
+            withVersion[args.length] = expectedVersion;
+            args = withVersion;
+        }
+        if (jdbcTemplate.update(sql, args) == 1) return written();
+        Row row = read(scheduleId, slotKey);
+        if (row == null) return reject(Outcome.SLOT_NOT_FOUND);
+        if (expectedVersion != null && row.version != expectedVersion) return conflict();
+        if (!row.active) return reject(Outcome.UNAVAILABLE);
+        if (row.reservedUntil != null && row.reservedUntil.isAfter(OffsetDateTime.now())) return reject(Outcome.HELD);
+        return reject(Outcome.UNAVAILABLE); // changed between the update and this read
+    }
+
+    private Outcome compareAndSet(long scheduleId, String slotKey, Long expectedVersion, Rule rule) {
+        for (int attempt = 1; ; attempt++) {
+            Row row = read(scheduleId, slotKey);
+            if (row == null) return reject(Outcome.SLOT_NOT_FOUND);
+            if (expectedVersion != null && row.version != expectedVersion) return conflict();
+            long seen = row.version;
+            Outcome outcome = rule.apply(row);
+            if (outcome != Outcome.OK) return reject(outcome);
+            if (jdbcTemplate.update(WRITE_IF_UNCHANGED, row.active, row.reservedUntil, row.reservedBy, row.time, row.id, seen) == 1) {
+                return written();
+            }
+            if (attempt >= maxAttempts) return conflict();
+            retry(attempt);
+        }
+    }
+
+    private Row read(long scheduleId, String slotKey) {
+        List<Row> rows = jdbcTemplate.query(READ, (rs, n) -> {
+            Row r = new Row();
+            r.id = rs.getLong("id");
+            r.active = rs.getBoolean("active");
+            r.reservedUntil = rs.getObject("reserved_until", OffsetDateTime.class);
+            Number by = (Number) rs.getObject("reserved_by");
+            r.reservedBy = by == null ? null : by.longValue();
+            r.time = rs.getString("slot_time");
+            r.version = rs.getLong("version");
+            return r;
+        }, scheduleId, slotKey);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private Outcome written() {
+        writes.increment();
+        return Outcome.OK;
+    }
+
+    private Outcome reject(Outcome outcome) {
+        rejected.increment();
+        return outcome;
+    }
+
+    private Outcome conflict() {
+        conflicts.increment();
+        return Outcome.CONFLICT;
+    }
+
+    // Full jitter, as in BookingTransactions, so writers that collided do not collide again
+    private void retry(int attempt) {
+        versionRetries.increment();
+        long bound = backoffMillis << Math.min(attempt - 1, 10);
+        if (bound <= 0) return;
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("mode", mode.name().toLowerCase(Locale.ROOT));
+        m.put("writes", writes.sum());
+        m.put("rejected", rejected.sum());
+        m.put("versionRetries", versionRetries.sum());
+        m.put("conflicts", conflicts.sum());
+        return m;
+    }
+}
@@ -0,0 +1,300 @@
+package com.medvault.medvault.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medvault.medvault.model.User;
+import com.medvault.medvault.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bulk onboarding of users from a streamed CSV (header: name,email,role,password) or NDJSON
+ * body. Rows are read in chunks; each chunk is validated with one query for existing
+ * emails/usernames, passwords are hashed in parallel on a pool sized to the cores, and the
+ * users are inserted with JDBC batching in one transaction per chunk. A chunk that fails to
+ * insert is retried row by row so a bad row is reported without losing the rest.
+ */
+@Service
+public class UserImportService {
+
+    public static class RowError {
+        public final long row;
+        public final String email;
+        public final String message;
+
+        RowError(long row, String email, String message) {
+            this.row = row;
+            this.email = email;
+            this.message = message;
+        }
+    }
+
+    public static class ImportResult {
+        public long total;
+        public long imported;
+        public long failed;
+        public long elapsedMs;
+        public double rowsPerSecond;
+        public List<RowError> errors = new ArrayList<>();
+        public boolean errorsTruncated;
+    }
+
+    private static class Row {
+        final long line;
+        final String name;
+        final String email;
+        final String role;
+        final String password;
+
+        Row(long line, String name, String email, String role, String password) {
+            this.line = line;
+            this.name = name == null ? null : name.trim();
+            this.email = email == null ? null : email.trim();
+            this.role = role == null ? null : role.trim().toLowerCase();
+            this.password = password;
+        }
+    }
+
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final UserRepository userRepository;
+    private final PasswordHasher passwordHasher;
+    private final IdentificationIdAllocator idAllocator;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final ExecutorService hashPool;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public UserImportService(UserRepository userRepository, PasswordHasher passwordHasher,
+                             IdentificationIdAllocator idAllocator, TransactionTemplate transactionTemplate,
+                             @Value("${users.import.chunk-size:500}") int chunkSize,
+                             @Value("${users.import.hash-threads:0}") int hashThreads) {
+        this.userRepository = userRepository;
+        this.passwordHasher = passwordHasher;
+        this.idAllocator = idAllocator;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = chunkSize;
+        int threads = hashThreads > 0 ? hashThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger seq = new AtomicInteger();
+        // separate from the login pool so an import never makes interactive logins answer 503
+        this.hashPool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "user-import-hash-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public ImportResult importUsers(InputStream body, boolean ndjson, boolean approve) throws IOException {
+        long start = System.nanoTime();
+        ImportResult result = new ImportResult();
+        Set<String> seenEmails = new HashSet<>();
+        Set<String> seenUsernames = new HashSet<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            Map<String, Integer> columns = null;
+            List<Row> chunk = new ArrayList<>(chunkSize);
+            String line;
+            long lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank()) continue;
+                if (!ndjson && columns == null) {
+                    columns = headerIndex(parseCsvLine(line));
+                    continue;
+                }
+                result.total++;
+                Row row;
+                try {
+                    row = ndjson ? parseJsonRow(lineNo, line) : parseCsvRow(lineNo, line, columns);
+                } catch (Exception ex) {
+                    fail(result, lineNo, null, "Unreadable row: " + ex.getMessage());
+                    continue;
+                }
+                String problem = validate(row, seenEmails, seenUsernames);
+                if (problem != null) {
+                    fail(result, row.line, row.email, problem);
+                    continue;
+                }
+                chunk.add(row);
+                if (chunk.size() >= chunkSize) {
+                    processChunk(chunk, approve, result);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) processChunk(chunk, approve, result);
+        }
+
+        result.elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        result.rowsPerSecond = result.elapsedMs == 0 ? result.imported : result.imported * 1000.0 / result.elapsedMs;
+        return result;
+    }
+
+    private void processChunk(List<Row> chunk, boolean approve, ImportResult result) {
+        // one round trip each to find rows that clash with existing accounts
+        Set<String> emails = new HashSet<>();
+        Set<String> usernames = new HashSet<>();
+        for (Row r : chunk) {
+            emails.add(r.email);
+            usernames.add(r.name);
+        }
+        Set<String> takenEmails = new HashSet<>(userRepository.findExistingEmails(emails));
+        Set<String> takenUsernames = new HashSet<>(userRepository.findExistingUsernames(usernames));
+
+        List<Row> accepted = new ArrayList<>(chunk.size());
+        for (Row r : chunk) {
+            if (takenEmails.contains(r.email)) fail(result, r.line, r.email, "Email already registered.");
+            else if (takenUsernames.contains(r.name)) fail(result, r.line, r.email, "Username already taken.");
+            else accepted.add(r);
+        }
+        if (accepted.isEmpty()) return;
+
+        // bcrypt dominates the cost of an import, so spread it over every core
+        List<CompletableFuture<User>> futures = new ArrayList<>(accepted.size());
+        for (Row r : accepted) {
+            futures.add(CompletableFuture.supplyAsync(() -> toUser(r, approve), hashPool));
+        }
+        // a row whose hashing or id allocation failed is reported and left out; the rest go in
+        List<Row> rows = new ArrayList<>(accepted.size());
+        List<User> users = new ArrayList<>(accepted.size());
+        for (int i = 0; i < futures.size(); i++) {
+            Row r = accepted.get(i);
+            try {
+                users.add(futures.get(i).join());
+                rows.add(r);
+            } catch (Exception ex) {
+                fail(result, r.line, r.email, "Unable to prepare user: " + rootMessage(ex));
+            }
+        }
+        if (users.isEmpty()) return;
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> userRepository.saveAll(users));
+            result.imported += users.size();
+        } catch (Exception batchFailure) {
+            // isolate the offending rows; every other row in the chunk still goes in
+            for (int i = 0; i < users.size(); i++) {
+                User u = users.get(i);
+                u.setId(null);
+                try {
+                    transactionTemplate.executeWithoutResult(status -> userRepository.save(u));
+                    result.imported++;
+                } catch (Exception ex) {
+                    fail(result, rows.get(i).line, u.getEmail(), "Unable to save user: " + rootMessage(ex));
+                }
+            }
+        }
+    }
+
+    private User toUser(Row r, boolean approve) {
+        User u = new User();
+        u.setUsername(r.name);
+        u.setEmail(r.email);
+        u.setPasswordHash(passwordHasher.encodeOnCurrentThread(r.password));
+        u.setRoles(r.role.toUpperCase());
+        u.setIdentificationId(idAllocator.allocate(IdentificationIdAllocator.prefixForRole(r.role)));
+        u.setIsApproved(approve);
+        u.setStatus(approve ? "ACTIVE" : "PENDING");
+        return u;
+    }
+
+    // Same rules as AuthController.signup, plus duplicates within the file
+    private String validate(Row r, Set<String> seenEmails, Set<String> seenUsernames) {
+        if (r.name == null || r.name.isEmpty() || r.email == null || r.email.isEmpty()
+                || r.role == null || r.role.isEmpty() || r.password == null || r.password.trim().isEmpty()) {
+            return "Please fill all required fields.";
+        }
+        if (r.password.length() < 6) return "Password must be at least 6 characters.";
+        int at = r.email.indexOf('@');
+        if (at < 1 || at == r.email.length() - 1) return "Please enter a valid email.";
+        if (!r.role.equals("patient") && !r.role.equals("doctor")) return "Invalid role. Only patient/doctor allowed.";
+        if (!seenEmails.add(r.email)) return "Duplicate email in import.";
+        if (!seenUsernames.add(r.name)) return "Duplicate name in import.";
+        return null;
+    }
+
+    private Row parseJsonRow(long line, String json) throws IOException {
+        Map<?, ?> m = mapper.readValue(json, Map.class);
+        return new Row(line, str(m.get("name")), str(m.get("email")), str(m.get("role")), str(m.get("password")));
+    }
+
+    private Row parseCsvRow(long line, String csv, Map<String, Integer> columns) {
+        List<String> f = parseCsvLine(csv);
+        return new Row(line, field(f, columns, "name"), field(f, columns, "email"),
+                field(f, columns, "role"), field(f, columns, "password"));
+    }
+
+    private static Map<String, Integer> headerIndex(List<String> header) {
+        Map<String, Integer> idx = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) idx.put(header.get(i).trim().toLowerCase(), i);
+        for (String required : List.of("name", "email", "role", "password")) {
+            if (!idx.containsKey(required)) throw new IllegalArgumentException("CSV header must contain " + required);
+        }
+        return idx;
+    }
+
+    private static String field(List<String> fields, Map<String, Integer> columns, String name) {
+        int i = columns.get(name);
+        return i < fields.size() ? fields.get(i) : null;
+    }
+
+    // RFC 4180 style: commas inside double quotes, "" as an escaped quote
+    static List<String> parseCsvLine(String line) {
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cur.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    cur.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                out.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(c);
+            }
+        }
+        out.add(cur.toString());
+        return out;
+    }
+
+    private static String str(Object o) {
+        return o == null ? null : o.toString();
+    }
+
+    private static void fail(ImportResult result, long row, String email, String message) {
+        result.failed++;
+        if (result.errors.size() < MAX_REPORTED_ERRORS) result.errors.add(new RowError(row, email, message));
+        else result.errorsTruncated = true;
+    }
+
+    private static String rootMessage(Throwable t) {
+        while (t.getCause() != null) t = t.getCause();
+        return t.getMessage();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashPool.shutdownNow();
+    }
+}
@@ -2,7 +2,7 @@ package com.medvault.medvault.service;
 
 import com.medvault.medvault.model.User;
 import com.medvault.medvault.repository.UserRepository;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import com.medvault.medvault.security.UserStatusCache;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
@@ -10,17 +10,23 @@ import java.util.Optional;
 @Service
 public class UserService {
     private final UserRepository userRepository;
-    private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    private final UserStatusCache userStatusCache;
+    private final PasswordHasher passwordHasher;
+    private final IdentificationIdAllocator idAllocator;
 
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, UserStatusCache userStatusCache, PasswordHasher passwordHasher,
+                       IdentificationIdAllocator idAllocator) {
         this.userRepository = userRepository;
+        this.userStatusCache = userStatusCache;
+        this.passwordHasher = passwordHasher;
+        this.idAllocator = idAllocator;
     }
 
     public User register(String username, String email, String plainPassword, String role) {
         User u = new User();
         u.setUsername(username);
         u.setEmail(email);
-        u.setPasswordHash(passwordEncoder.encode(plainPassword));
+        u.setPasswordHash(passwordHasher.encode(plainPassword));
         // Store role as uppercase role name (e.g. PATIENT / DOCTOR / ADMIN)
         if (role != null) {
             u.setRoles(role.toUpperCase());
@@ -28,11 +34,8 @@ public class UserService {
             u.setRoles("USER");
         }
         
-        // Generate unique identification ID based on role
-        String prefix = "PATIENT".equalsIgnoreCase(role) ? "PID" : 
-                       "DOCTOR".equalsIgnoreCase(role) ? "DID" : "UID";
-        long count = userRepository.countByRoles(role != null ? role.toUpperCase() : "USER");
-        u.setIdentificationId(prefix + "-" + String.format("%05d", count + 1));
+        // Generate unique identification ID based on role (block-allocated from a sequence)
+        u.setIdentificationId(idAllocator.allocate(IdentificationIdAllocator.prefixForRole(role)));
         
         return userRepository.save(u);
     }
@@ -46,7 +49,17 @@ public class UserService {
     }
 
     public boolean checkPassword(User user, String plainPassword) {
-        return passwordEncoder.matches(plainPassword, user.getPasswordHash());
+        boolean matches = passwordHasher.matches(plainPassword, user.getPasswordHash());
+        if (matches && passwordHasher.needsUpgrade(user.getPasswordHash())) {
+            // stored at an older (lower) bcrypt cost; rehash now that we have the plain password
+            try {
+                user.setPasswordHash(passwordHasher.encode(plainPassword));
+                userRepository.save(user);
+            } catch (PasswordHashingBusyException ex) {
+                // not worth failing the login over; the upgrade is retried on the next login
+            }
+        }
+        return matches;
     }
 
     public Optional<User> findById(Long id) { return userRepository.findById(id); }
@@ -57,7 +70,10 @@ public class UserService {
         User u = userRepository.findById(id).orElseThrow(() -> new java.util.NoSuchElementException("User not found"));
         u.setIsApproved(approved);
         u.setStatus(status);
-        return userRepository.save(u);
+        User saved = userRepository.save(u);
+        // stateless JWT requests read status from the cache, so drop it for immediate effect
+        userStatusCache.evict(id);
+        return saved;
     }
 }
 
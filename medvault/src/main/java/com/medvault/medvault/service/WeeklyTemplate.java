@@ -0,0 +1,109 @@
+package com.medvault.medvault.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * A doctor's recurring week, kept as JSON in Doctor.availabilitySchedule:
+ *
+ * <pre>{"slotMinutes": 30, "days": {"MON": ["09:00-12:00", "14:00-17:00"], "WED": ["10:00-13:00"]}}</pre>
+ *
+ * Each window is cut into slots of slotMinutes (default 30); a remainder shorter than a slot
+ * is dropped. Slots come out as "HH:MM-HH:MM" times keyed "HHMM", so generating the same day
+ * twice yields the same keys.
+ */
+public final class WeeklyTemplate {
+
+    public static final class Slot {
+        public final String key;
+        public final String time;
+
+        Slot(String key, String time) {
+            this.key = key;
+            this.time = time;
+        }
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final DateTimeFormatter HH_MM = DateTimeFormatter.ofPattern("HH:mm");
+
+    private final Map<DayOfWeek, List<Slot>> slots;
+
+    private WeeklyTemplate(Map<DayOfWeek, List<Slot>> slots) {
+        this.slots = slots;
+    }
+
+    // availabilitySchedule used to be free text; only a JSON object is treated as a template
+    public static boolean isTemplate(String raw) {
+        return raw != null && raw.trim().startsWith("{");
+    }
+
+    public static WeeklyTemplate parse(String raw) {
+        JsonNode root;
+        try {
+            root = MAPPER.readTree(raw);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Availability template is not valid JSON");
+        }
+        int minutes = root.path("slotMinutes").asInt(30);
+        if (minutes < 5 || minutes > 240) throw new IllegalArgumentException("slotMinutes must be between 5 and 240");
+
+        Map<DayOfWeek, List<Slot>> slots = new EnumMap<>(DayOfWeek.class);
+        Iterator<Map.Entry<String, JsonNode>> days = root.path("days").fields();
+        while (days.hasNext()) {
+            Map.Entry<String, JsonNode> day = days.next();
+            DayOfWeek dow = dayOf(day.getKey());
+            List<int[]> windows = new ArrayList<>(); // [from, to) in minutes of the day
+            for (JsonNode window : day.getValue()) {
+                String[] range = window.asText().split("-");
+                if (range.length != 2) throw new IllegalArgumentException("Window must be HH:MM-HH:MM: " + window.asText());
+                int from = minuteOfDay(range[0]);
+                int to = minuteOfDay(range[1]);
+                if (to <= from) throw new IllegalArgumentException("Window ends before it starts: " + window.asText());
+                windows.add(new int[] {from, to});
+            }
+            windows.sort(Comparator.comparingInt(w -> w[0]));
+            List<Slot> out = new ArrayList<>();
+            for (int i = 0; i < windows.size(); i++) {
+                int[] w = windows.get(i);
+                if (i > 0 && w[0] < windows.get(i - 1)[1]) throw new IllegalArgumentException("Overlapping windows on " + dow);
+                for (int t = w[0]; t + minutes <= w[1]; t += minutes) {
+                    LocalTime start = LocalTime.ofSecondOfDay(t * 60L);
+                    LocalTime end = LocalTime.ofSecondOfDay((t + minutes) % 1440 * 60L);
+                    out.add(new Slot(start.format(HH_MM).replace(":", ""), start.format(HH_MM) + "-" + end.format(HH_MM)));
+                }
+            }
+            slots.put(dow, List.copyOf(out));
+        }
+        return new WeeklyTemplate(slots);
+    }
+
+    public List<Slot> slotsOn(DayOfWeek day) {
+        return slots.getOrDefault(day, List.of());
+    }
+
+    private static DayOfWeek dayOf(String name) {
+        String n = name.trim().toUpperCase(Locale.ROOT);
+        for (DayOfWeek d : DayOfWeek.values()) {
+            if (n.length() >= 3 && d.name().startsWith(n)) return d;
+        }
+        throw new IllegalArgumentException("Unknown day: " + name);
+    }
+
+    private static int minuteOfDay(String s) {
+        String t = s.trim();
+        if (t.equals("24:00")) return 1440;
+        try {
+            LocalTime parsed = LocalTime.parse(t.length() == 4 ? "0" + t : t, HH_MM);
+            return parsed.getHour() * 60 + parsed.getMinute();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Bad time: " + s);
+        }
+    }
+}
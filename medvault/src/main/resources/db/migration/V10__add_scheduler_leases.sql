@@ -0,0 +1,11 @@
+-- Time-bound ownership of cluster-wide background jobs (e.g. the slot hold sweeper);
+-- a node runs the job only while it holds an unexpired lease row
+CREATE TABLE IF NOT EXISTS scheduler_leases (
+    name VARCHAR(100) PRIMARY KEY,
+    owner VARCHAR(200) NOT NULL,
+    expires_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+-- Outstanding holds, reloaded by the sweeper at startup and on taking over the lease
+CREATE INDEX IF NOT EXISTS idx_schedule_slots_reserved_until ON schedule_slots(reserved_until)
+    WHERE reserved_until IS NOT NULL;
@@ -0,0 +1,14 @@
+-- First response of each Idempotency-Key on the appointment write endpoints; the row is
+-- written in the same transaction as the booking it answers, so it exists iff that committed
+CREATE TABLE IF NOT EXISTS idempotency_keys (
+    scope VARCHAR(300) NOT NULL,
+    idem_key VARCHAR(200) NOT NULL,
+    request_hash VARCHAR(64) NOT NULL,
+    status_code INTEGER,
+    response_body TEXT,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    expires_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (scope, idem_key)
+);
+
+CREATE INDEX IF NOT EXISTS idx_idempotency_keys_expires ON idempotency_keys(expires_at);
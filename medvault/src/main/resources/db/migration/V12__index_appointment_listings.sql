@@ -0,0 +1,24 @@
+-- Keyset pagination of appointment listings walks these in (created_at, id) order per
+-- doctor/patient, so a page costs the same however long the history is.
+
+-- appointments has so far been created by Hibernate; make sure it exists before indexing
+CREATE TABLE IF NOT EXISTS appointments (
+    id BIGSERIAL PRIMARY KEY,
+    patient_user_id BIGINT,
+    doctor_user_id BIGINT,
+    doctor_name VARCHAR(255),
+    date VARCHAR(255),
+    slot_time VARCHAR(255),
+    schedule_id BIGINT,
+    slot_id VARCHAR(255),
+    status VARCHAR(255),
+    created_at TIMESTAMP WITH TIME ZONE
+);
+
+CREATE INDEX IF NOT EXISTS idx_appointments_doctor_created
+    ON appointments(doctor_user_id, created_at DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_appointments_patient_created
+    ON appointments(patient_user_id, created_at DESC, id DESC);
+
+-- the cursor needs a created_at on every row
+UPDATE appointments SET created_at = CURRENT_TIMESTAMP WHERE created_at IS NULL;
@@ -0,0 +1,38 @@
+-- Typed start/end instants for appointments so agenda and overlap queries are index range
+-- scans instead of string filtering in Java. date/slot_time stay as the display values.
+ALTER TABLE appointments ADD COLUMN IF NOT EXISTS start_at TIMESTAMP WITH TIME ZONE;
+ALTER TABLE appointments ADD COLUMN IF NOT EXISTS end_at TIMESTAMP WITH TIME ZONE;
+
+-- Backfill from date 'YYYY-MM-DD' and slot_time 'HH:MM-HH:MM' (or just 'HH:MM', then 30 min),
+-- read in the clinic's time zone. Rows that do not parse are left NULL.
+DO $$
+DECLARE
+    r RECORD;
+    s TEXT;
+    e TEXT;
+    starts TIMESTAMP WITH TIME ZONE;
+    ends TIMESTAMP WITH TIME ZONE;
+BEGIN
+    FOR r IN SELECT id, date, slot_time FROM appointments
+             WHERE start_at IS NULL AND date ~ '^\d{4}-\d{2}-\d{2}$' LOOP
+        s := substring(r.slot_time FROM '^\s*(([01]?\d|2[0-3]):[0-5]\d)');
+        CONTINUE WHEN s IS NULL;
+        e := substring(r.slot_time FROM '-\s*(([01]?\d|2[0-3]):[0-5]\d)');
+        BEGIN
+            starts := (r.date || ' ' || s)::timestamp AT TIME ZONE '${clinic_time_zone}';
+            IF e IS NULL THEN
+                ends := starts + INTERVAL '30 minutes';
+            ELSE
+                ends := (r.date || ' ' || e)::timestamp AT TIME ZONE '${clinic_time_zone}';
+                IF ends <= starts THEN ends := ends + INTERVAL '1 day'; END IF; -- e.g. 23:30-00:00
+            END IF;
+            UPDATE appointments SET start_at = starts, end_at = ends WHERE id = r.id;
+        EXCEPTION WHEN others THEN
+            -- e.g. 2024-02-30; leave it for the display strings
+            NULL;
+        END;
+    END LOOP;
+END $$;
+
+CREATE INDEX IF NOT EXISTS idx_appointments_doctor_start ON appointments(doctor_user_id, start_at);
+CREATE INDEX IF NOT EXISTS idx_appointments_patient_start ON appointments(patient_user_id, start_at);
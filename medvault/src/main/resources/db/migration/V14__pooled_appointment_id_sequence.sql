@@ -0,0 +1,5 @@
+-- Appointment ids from a pooled sequence (Hibernate allocationSize = 50) so the rows of a
+-- batch booking go out as one JDBC batch; IDENTITY forces a round trip per row. The
+-- sequence starts past the current max id (pooled hands out (value - 49 .. value)).
+CREATE SEQUENCE IF NOT EXISTS appointments_pooled_seq MINVALUE 0 INCREMENT BY 50;
+SELECT setval('appointments_pooled_seq', COALESCE((SELECT MAX(id) FROM appointments), 0), true);
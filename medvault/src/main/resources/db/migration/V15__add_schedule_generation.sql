@@ -0,0 +1,11 @@
+-- Progress of the rolling-horizon schedule generator: the last day generated for each doctor
+-- and the template it was generated from (a different hash means the template changed).
+CREATE TABLE IF NOT EXISTS schedule_generation (
+    doctor_user_id BIGINT PRIMARY KEY,
+    generated_through DATE NOT NULL,
+    template_hash INTEGER NOT NULL,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- "does this doctor already have this day" is asked for every generated day
+CREATE INDEX IF NOT EXISTS idx_doctor_schedules_doctor_date ON doctor_schedules(doctor_user_id, date);
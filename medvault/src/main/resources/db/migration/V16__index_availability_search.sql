@@ -0,0 +1,2 @@
+-- Availability search: "has at least one open slot" probes only the active slots of a day
+CREATE INDEX IF NOT EXISTS idx_schedule_slots_active ON schedule_slots(schedule_id) WHERE active;
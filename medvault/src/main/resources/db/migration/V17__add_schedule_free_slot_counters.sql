@@ -0,0 +1,16 @@
+-- Maintained per-day availability on the schedule row (see ScheduleCounters): how many slots
+-- are still active and the earliest of them, so listings need not read schedule_slots.
+ALTER TABLE doctor_schedules ADD COLUMN IF NOT EXISTS free_slot_count INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE doctor_schedules ADD COLUMN IF NOT EXISTS next_free_slot_time VARCHAR(100);
+
+UPDATE doctor_schedules s SET
+    free_slot_count = (SELECT count(*) FROM schedule_slots sl WHERE sl.schedule_id = s.id AND sl.active = true),
+    next_free_slot_time = (SELECT min(sl.slot_time) FROM schedule_slots sl WHERE sl.schedule_id = s.id AND sl.active = true);
+
+-- Only days with capacity are indexed; a day drops out when fully booked. Nothing empties past
+-- days, so they stay in until then and every listing bounds the date range itself.
+CREATE INDEX IF NOT EXISTS idx_doctor_schedules_free ON doctor_schedules(date, id)
+    INCLUDE (doctor_user_id, free_slot_count, next_free_slot_time) WHERE free_slot_count > 0;
+CREATE INDEX IF NOT EXISTS idx_doctor_schedules_spec_free ON doctor_schedules(lower(specialization), date, id)
+    WHERE free_slot_count > 0;
+
@@ -0,0 +1,3 @@
+-- Row version of a slot, bumped by every write; the optimistic booking mode compares and sets
+-- it, and clients may send it back to make a doctor-side change conditional (see SlotWriter).
+ALTER TABLE schedule_slots ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
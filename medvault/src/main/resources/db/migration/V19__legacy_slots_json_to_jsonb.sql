@@ -0,0 +1,13 @@
+-- doctor_schedules.slots_json has not been written since V8 moved slots into schedule_slots;
+-- it stays as the pre-migration record. Store it as jsonb (empty and 'null' documents become
+-- NULL) so it can be queried in SQL without a cast per row, e.g. which schedules once had a
+-- given slot: slots_json @> '[{"id": "..."}]'. The jsonb_path_ops GIN index serves those
+-- containment lookups; the column is never updated, so the index costs nothing on writes.
+-- Live availability ("schedules with any active slot") is answered by the free_slot_count
+-- indexes of V17, not by this column.
+ALTER TABLE doctor_schedules ALTER COLUMN slots_json TYPE jsonb
+    USING CASE WHEN slots_json IS NULL OR btrim(slots_json) = '' OR btrim(slots_json) = 'null' THEN NULL
+               ELSE slots_json::jsonb END;
+
+CREATE INDEX IF NOT EXISTS idx_doctor_schedules_slots_json
+    ON doctor_schedules USING gin (slots_json jsonb_path_ops) WHERE slots_json IS NOT NULL;
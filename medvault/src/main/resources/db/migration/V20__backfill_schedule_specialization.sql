@@ -0,0 +1,9 @@
+-- Availability search filters on lower(doctor_schedules.specialization) (indexed) but shows
+-- the doctor profile's specialization when the schedule's own is blank, so such days were
+-- listed under a specialization they could not be found by. Fill the blanks from the profile
+-- once; DoctorService keeps filling them when a profile is saved.
+UPDATE doctor_schedules s SET specialization = d.specialization
+FROM doctors d
+WHERE d.user_id = s.doctor_user_id
+  AND (s.specialization IS NULL OR btrim(s.specialization) = '')
+  AND d.specialization IS NOT NULL AND btrim(d.specialization) <> '';
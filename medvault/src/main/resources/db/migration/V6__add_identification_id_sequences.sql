@@ -0,0 +1,14 @@
+-- Sequences backing IdentificationIdAllocator. Each nextval reserves a block of 50 ids
+-- (hi/lo): the returned value is the top of the block. The allocator reads INCREMENT BY
+-- from pg_sequences at startup, so changing the block size means altering the sequence.
+CREATE SEQUENCE IF NOT EXISTS identification_pid_seq MINVALUE 0 START WITH 0 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS identification_did_seq MINVALUE 0 START WITH 0 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS identification_uid_seq MINVALUE 0 START WITH 0 INCREMENT BY 50;
+
+-- Continue after the highest id already issued so existing PID-/DID-/UID- values are never reused
+SELECT setval('identification_pid_seq', COALESCE((SELECT MAX(CAST(SUBSTRING(identification_id FROM 5) AS BIGINT))
+    FROM users WHERE identification_id ~ '^PID-[0-9]+$'), 0));
+SELECT setval('identification_did_seq', COALESCE((SELECT MAX(CAST(SUBSTRING(identification_id FROM 5) AS BIGINT))
+    FROM users WHERE identification_id ~ '^DID-[0-9]+$'), 0));
+SELECT setval('identification_uid_seq', COALESCE((SELECT MAX(CAST(SUBSTRING(identification_id FROM 5) AS BIGINT))
+    FROM users WHERE identification_id ~ '^UID-[0-9]+$'), 0));
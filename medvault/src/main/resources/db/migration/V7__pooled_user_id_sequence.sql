@@ -0,0 +1,3 @@
+-- User ids now come from a pooled sequence (Hibernate allocationSize = 50) so user inserts
+-- can be JDBC-batched. The BIGSERIAL default keeps working for any direct inserts.
+ALTER SEQUENCE IF EXISTS users_id_seq INCREMENT BY 50;
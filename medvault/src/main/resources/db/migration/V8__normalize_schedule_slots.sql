@@ -0,0 +1,43 @@
+-- Slots move out of doctor_schedules.slots_json into one row each, so a booking is a
+-- conditional UPDATE of a single slot row instead of a lock on the whole doctor-day.
+
+-- doctor_schedules has so far been created by Hibernate; make sure it exists for the backfill
+CREATE TABLE IF NOT EXISTS doctor_schedules (
+    id BIGSERIAL PRIMARY KEY,
+    doctor_user_id BIGINT,
+    doctor_name VARCHAR(255),
+    specialization VARCHAR(255),
+    date DATE,
+    slots_json TEXT
+);
+
+CREATE TABLE IF NOT EXISTS schedule_slots (
+    id BIGSERIAL PRIMARY KEY,
+    schedule_id BIGINT NOT NULL REFERENCES doctor_schedules(id) ON DELETE CASCADE,
+    slot_key VARCHAR(100) NOT NULL,
+    slot_time VARCHAR(100),
+    position INTEGER NOT NULL DEFAULT 0,
+    active BOOLEAN NOT NULL DEFAULT true,
+    reserved_until TIMESTAMP WITH TIME ZONE,
+    reserved_by BIGINT,
+    CONSTRAINT uq_schedule_slots_schedule_key UNIQUE (schedule_id, slot_key)
+);
+
+-- Backfill from the JSON array ({id,time,active,reservedUntil,reservedBy} per element)
+INSERT INTO schedule_slots (schedule_id, slot_key, slot_time, position, active, reserved_until, reserved_by)
+SELECT s.id,
+       e.value->>'id',
+       e.value->>'time',
+       (e.ordinality - 1)::int,
+       COALESCE((e.value->>'active')::boolean, true),
+       CASE WHEN e.value->>'reservedUntil' ~ '^[0-9]{4}-' THEN (e.value->>'reservedUntil')::timestamptz END,
+       CASE WHEN e.value->>'reservedBy' ~ '^[0-9]+$' THEN (e.value->>'reservedBy')::bigint END
+FROM doctor_schedules s
+CROSS JOIN LATERAL jsonb_array_elements(
+    CASE WHEN s.slots_json IS NULL OR btrim(s.slots_json) = '' OR btrim(s.slots_json) = 'null' THEN '[]'::jsonb
+         ELSE s.slots_json::jsonb END) WITH ORDINALITY AS e(value, ordinality)
+WHERE e.value->>'id' IS NOT NULL
+ON CONFLICT (schedule_id, slot_key) DO NOTHING;
+
+-- slots_json is no longer written; keep the column (nullable) as the pre-migration record
+ALTER TABLE doctor_schedules ALTER COLUMN slots_json DROP NOT NULL;
@@ -0,0 +1,20 @@
+-- Write-behind queue of the in-memory booking engine (booking.engine.enabled). Each row is
+-- the state of one slot after a transition, inserted in the same transaction as the
+-- appointment change; the flusher copies rows into schedule_slots and deletes them.
+CREATE TABLE IF NOT EXISTS slot_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    schedule_id BIGINT NOT NULL,
+    slot_key VARCHAR(100) NOT NULL,
+    active BOOLEAN NOT NULL,
+    removed BOOLEAN NOT NULL DEFAULT false,
+    reserved_until TIMESTAMP WITH TIME ZONE,
+    reserved_by BIGINT,
+    state_version BIGINT NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Applied only when newer than what the row already holds, so replays and reordered
+-- batches cannot move a slot backwards
+ALTER TABLE schedule_slots ADD COLUMN IF NOT EXISTS state_version BIGINT NOT NULL DEFAULT 0;
+
+CREATE INDEX IF NOT EXISTS idx_slot_outbox_schedule ON slot_outbox(schedule_id);
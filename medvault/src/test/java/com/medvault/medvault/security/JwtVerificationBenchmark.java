@@ -0,0 +1,64 @@
+package com.medvault.medvault.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request token verification cost: the legacy filter path (three parses, signing key
+ * rebuilt on each) against the single-parse JwtUtil.verify path.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *   -Dexec.mainClass=com.medvault.medvault.security.JwtVerificationBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtVerificationBenchmark {
+
+    private static final String SECRET = "MedVaultSecretKey2024SuperSecureJWTTokenForAuthenticationSystem";
+
+    private JwtUtil jwtUtil;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = new JwtUtil(SECRET, 86400000L);
+        token = jwtUtil.generateToken("patient@example.com", 42L, "PATIENT", "PID-00042");
+    }
+
+    @Benchmark
+    public boolean legacyThreeParses() {
+        // extractUsername, then validateToken(jwt, username) -> extractUsername + isTokenExpired
+        String username = legacyClaims(token).getSubject();
+        String again = legacyClaims(token).getSubject();
+        Date exp = legacyClaims(token).getExpiration();
+        return again.equals(username) && !exp.before(new Date());
+    }
+
+    @Benchmark
+    public JwtClaims singleParse() {
+        return jwtUtil.verify(token);
+    }
+
+    private static Claims legacyClaims(String token) {
+        return Jwts.parser()
+                .verifyWith(JwtUtil.buildSigningKey(SECRET))
+                .build()
+                .parseSignedClaims(token)
+                .getPayload();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JwtVerificationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
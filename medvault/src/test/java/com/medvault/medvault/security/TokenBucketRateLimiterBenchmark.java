@@ -0,0 +1,62 @@
+package com.medvault.medvault.security;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of the auth rate limiter (hot key and a spread of 10k keys, 4 threads)
+ * next to a single bcrypt verification at the default cost, which is what every login pays.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *   -Dexec.mainClass=com.medvault.medvault.security.TokenBucketRateLimiterBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenBucketRateLimiterBenchmark {
+
+    private TokenBucketRateLimiter limiter;
+    private String[] keys;
+    private BCryptPasswordEncoder encoder;
+    private String hash;
+
+    @Setup
+    public void setUp() {
+        // effectively unlimited so the benchmark measures bookkeeping, not rejections
+        limiter = new TokenBucketRateLimiter(1_000_000, 1e12, 100_000);
+        keys = new String[10_000];
+        for (int i = 0; i < keys.length; i++) keys[i] = "10.0." + (i / 256) + "." + (i % 256);
+        encoder = new BCryptPasswordEncoder(10);
+        hash = encoder.encode("correct horse battery staple");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long hotKey() {
+        return limiter.tryAcquire("10.0.0.1");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long spreadKeys() {
+        return limiter.tryAcquire(keys[ThreadLocalRandom.current().nextInt(keys.length)]);
+    }
+
+    @Benchmark
+    public boolean bcryptMatches() {
+        return encoder.matches("correct horse battery staple", hash);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TokenBucketRateLimiterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
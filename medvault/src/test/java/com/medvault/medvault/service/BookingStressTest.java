@@ -0,0 +1,412 @@
+package com.medvault.medvault.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medvault.medvault.MedvaultApplication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Concurrent booking stress run with a double-booking oracle. It starts the application
+ * (profile "stress": in-memory H2 in PostgreSQL mode, see application-stress.properties) on a
+ * random port and has hundreds of threads fire a mix of reserve / book / cancel / reschedule /
+ * toggle requests at the real endpoints over HTTP, so controllers, idempotency, the slot
+ * write path, the booking engine (when enabled) and the background hold sweeper all take
+ * part exactly as in production. Schedules are created through POST /api/doctor/schedules;
+ * some bookings are sent again with the same Idempotency-Key and must be answered with the
+ * first response.
+ *
+ * At the end it checks:
+ * - no slot is held by two live appointments;
+ * - every live (CONFIRMED or RESCHEDULED) appointment points at an inactive slot;
+ * - no booked slot still carries a hold;
+ * - once the holds have expired and the sweeper has run, no expired hold is left behind;
+ * - free_slot_count / next_free_slot_time match the slot rows;
+ * - a replayed booking returned the appointment of its first attempt.
+ * It prints throughput, latency percentiles per operation, the time spent in row-locking
+ * statements (FOR UPDATE through JdbcTemplate; the appointment row lock taken through JPA is
+ * not included), and the application's /api/admin/metrics.
+ *
+ * Off by default; run with
+ *   mvn test -Dtest=BookingStressTest -Dstress=true
+ * and tune with -Dstress.threads=200 -Dstress.ops=20000 -Dstress.schedules=20 -Dstress.slots=16
+ *   -Dstress.mix=reserve=15,book=40,cancel=15,reschedule=20,toggle=10 -Dstress.mode=pessimistic|optimistic
+ *   -Dstress.engine=true -Dstress.replays=10 (percent of bookings resent with their Idempotency-Key)
+ * Java 17 has no virtual threads, so the clients are platform threads.
+ */
+@EnabledIfSystemProperty(named = "stress", matches = "true")
+class BookingStressTest {
+
+    private static final long HOLD_TTL_SECONDS = 2;
+    private static final String[] OPS = {"reserve", "book", "cancel", "reschedule", "toggle"};
+
+    private final int threads = Integer.getInteger("stress.threads", 200);
+    private final int ops = Integer.getInteger("stress.ops", 20_000);
+    private final int schedules = Integer.getInteger("stress.schedules", 20);
+    private final int slotsPerSchedule = Integer.getInteger("stress.slots", 16);
+    private final String mode = System.getProperty("stress.mode", "pessimistic");
+    private final boolean engine = Boolean.getBoolean("stress.engine");
+    private final int replayPercent = Integer.getInteger("stress.replays", 10);
+    private final int[] mix = parseMix(System.getProperty("stress.mix", "reserve=15,book=40,cancel=15,reschedule=20,toggle=10"));
+
+    // Times the row-locking statements; everything else is delegated unchanged
+    static final class TimedJdbcTemplate extends JdbcTemplate {
+        final LongAdder lockNanos = new LongAdder();
+        final LongAdder lockStatements = new LongAdder();
+
+        TimedJdbcTemplate(DataSource dataSource) {
+            super(dataSource);
+        }
+
+        @Override
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            long start = System.nanoTime();
+            try {
+                return super.queryForList(sql, elementType, args);
+            } finally {
+                if (sql.contains("FOR UPDATE")) record(start);
+            }
+        }
+
+        @Override
+        public List<Map<String, Object>> queryForList(String sql, Object... args) {
+            long start = System.nanoTime();
+            try {
+                return super.queryForList(sql, args);
+            } finally {
+                if (sql.contains("FOR UPDATE")) record(start);
+            }
+        }
+
+        private void record(long start) {
+            lockNanos.add(System.nanoTime() - start);
+            lockStatements.increment();
+        }
+    }
+
+    // Replaces the app's JdbcTemplate with the timed one; one node, so every job lease is ours
+    @TestConfiguration(proxyBeanMethods = false)
+    static class StressBeans {
+        @Bean
+        TimedJdbcTemplate jdbcTemplate(DataSource dataSource) {
+            return new TimedJdbcTemplate(dataSource);
+        }
+
+        // scheduler_leases is taken with a PostgreSQL upsert H2 cannot run
+        @Bean
+        @Primary
+        SchedulerLease singleNodeLease(JdbcTemplate jdbcTemplate) {
+            return new SchedulerLease(jdbcTemplate) {
+                @Override
+                public boolean tryAcquire(String name, long ttlMillis) {
+                    return true;
+                }
+
+                @Override
+                public void release(String name) {
+                }
+            };
+        }
+    }
+
+    private static final class Booking {
+        final String key;
+        final String body;
+        final long appointmentId; // 0 when the first attempt was turned away
+
+        Booking(String key, String body, long appointmentId) {
+            this.key = key;
+            this.body = body;
+            this.appointmentId = appointmentId;
+        }
+    }
+
+    private final ObjectMapper json = new ObjectMapper();
+    private ConfigurableApplicationContext app;
+    private TimedJdbcTemplate jdbc;
+    private HttpClient http;
+    private String baseUrl;
+    private final List<Long> scheduleIds = new ArrayList<>();
+    private final List<LocalDate> scheduleDates = new ArrayList<>();
+    private final List<Long> appointmentIds = Collections.synchronizedList(new ArrayList<>());
+    private final List<Booking> bookings = Collections.synchronizedList(new ArrayList<>());
+    private final LongAdder replayMismatches = new LongAdder();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // command-line arguments, so they win over application.properties
+        app = new SpringApplicationBuilder(MedvaultApplication.class, StressBeans.class).profiles("stress").run(
+                "--spring.datasource.url=jdbc:h2:mem:booking_stress_" + System.nanoTime()
+                        + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000;IGNORE_UNKNOWN_SETTINGS=TRUE",
+                "--spring.datasource.hikari.maximum-pool-size=" + (threads + 8),
+                "--booking.concurrency.mode=" + mode,
+                "--booking.engine.enabled=" + engine,
+                "--booking.holds.sweep-ms=200");
+        jdbc = app.getBean(TimedJdbcTemplate.class);
+        baseUrl = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+        http = HttpClient.newBuilder().executor(Executors.newFixedThreadPool(16))
+                .connectTimeout(Duration.ofSeconds(10)).build();
+
+        // POST /api/doctor/schedules, one doctor-day per doctor
+        for (int s = 1; s <= schedules; s++) {
+            LocalDate date = LocalDate.now().plusDays(s);
+            List<Map<String, Object>> slots = new ArrayList<>();
+            for (int p = 0; p < slotsPerSchedule; p++) {
+                slots.add(Map.of("id", key(p), "time", slotTime(p), "active", true));
+            }
+            JsonNode created = send("POST", "/api/doctor/schedules", Map.of("doctorUserId", s, "doctorName", "Doctor " + s,
+                    "specialization", "General", "date", date.toString(), "slots", slots), null).body;
+            assertThat(created.path("success").asBoolean()).as("schedule created: %s", created).isTrue();
+            scheduleIds.add(created.path("data").path("id").asLong());
+            scheduleDates.add(date);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (app != null) app.close();
+    }
+
+    @Test
+    void concurrentBookingKeepsSlotsAndAppointmentsConsistent() throws Exception {
+        long[][] latencies = new long[OPS.length][ops];
+        int[] counts = new int[OPS.length];
+        Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+        LongAdder errors = new LongAdder();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < ops; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                int op = pick(ThreadLocalRandom.current().nextInt(100));
+                long begin = System.nanoTime();
+                String outcome;
+                try {
+                    outcome = run(op);
+                } catch (IOException | RuntimeException e) {
+                    errors.increment();
+                    outcome = "error:" + e.getClass().getSimpleName();
+                }
+                long micros = (System.nanoTime() - begin) / 1_000;
+                synchronized (counts) {
+                    latencies[op][counts[op]++] = micros;
+                }
+                outcomes.computeIfAbsent(OPS[op] + " " + outcome, k -> new LongAdder()).increment();
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> f : futures) f.get(10, TimeUnit.MINUTES);
+        long elapsedNanos = System.nanoTime() - begin;
+        pool.shutdown();
+
+        // the engine writes slot rows behind; drain its outbox before the sweep reads them
+        if (engine) app.getBean(SlotInventoryEngine.class).flush();
+        // every hold placed during the run is due now; one more sweep must clear all of them
+        Thread.sleep(TimeUnit.SECONDS.toMillis(HOLD_TTL_SECONDS) + 100);
+        app.getBean(SlotHoldExpiryService.class).sweep();
+
+        report(latencies, counts, outcomes, elapsedNanos);
+
+        assertThat(errors.sum()).as("requests that failed or answered 4xx/5xx unexpectedly").isZero();
+        assertThat(replayMismatches.sum()).as("replayed bookings answered with another appointment").isZero();
+        assertThat(jdbc.queryForList("SELECT schedule_id, slot_id FROM appointments WHERE status IN ('CONFIRMED', 'RESCHEDULED') "
+                + "GROUP BY schedule_id, slot_id HAVING COUNT(*) > 1")).as("slots booked twice").isEmpty();
+        assertThat(jdbc.queryForList("SELECT a.id FROM appointments a LEFT JOIN schedule_slots s "
+                + "ON s.schedule_id = a.schedule_id AND s.slot_key = a.slot_id "
+                + "WHERE a.status IN ('CONFIRMED', 'RESCHEDULED') AND (s.id IS NULL OR s.active = TRUE)"))
+                .as("live appointments on a missing or free slot").isEmpty();
+        assertThat(jdbc.queryForList("SELECT s.id FROM schedule_slots s JOIN appointments a "
+                + "ON s.schedule_id = a.schedule_id AND s.slot_key = a.slot_id "
+                + "WHERE a.status IN ('CONFIRMED', 'RESCHEDULED') AND s.reserved_by IS NOT NULL"))
+                .as("booked slots still carrying a hold").isEmpty();
+        assertThat(jdbc.queryForList("SELECT id FROM schedule_slots WHERE reserved_by IS NOT NULL AND reserved_until <= ?",
+                OffsetDateTime.now())).as("expired holds left behind by the sweeper").isEmpty();
+        assertThat(jdbc.queryForList("SELECT d.id FROM doctor_schedules d WHERE d.free_slot_count <> "
+                + "(SELECT COUNT(*) FROM schedule_slots s WHERE s.schedule_id = d.id AND s.active = TRUE) "
+                + "OR COALESCE(d.next_free_slot_time, '') <> COALESCE((SELECT MIN(s.slot_time) FROM schedule_slots s "
+                + "WHERE s.schedule_id = d.id AND s.active = TRUE), '')")).as("drifted free-slot counters").isEmpty();
+    }
+
+    private String run(int op) throws IOException, InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int day = random.nextInt(schedules);
+        long scheduleId = scheduleIds.get(day);
+        int position = random.nextInt(slotsPerSchedule);
+        long patient = 1 + random.nextInt(1_000);
+        switch (OPS[op]) {
+            case "reserve":
+                return send("POST", "/api/appointments/reserve/" + scheduleId + "/" + key(position),
+                        Map.of("patientUserId", patient, "ttl", HOLD_TTL_SECONDS), null).outcome();
+            case "book":
+                return book(day, scheduleId, position, patient);
+            case "cancel": {
+                long id = anyAppointment();
+                if (id == 0) return "NO_APPOINTMENT_YET";
+                return send("PATCH", "/api/appointments/" + id + "/cancel", Map.of(), null).outcome();
+            }
+            case "reschedule": {
+                long id = anyAppointment();
+                if (id == 0) return "NO_APPOINTMENT_YET";
+                return send("PATCH", "/api/appointments/" + id + "/reschedule", Map.of("scheduleId", scheduleId,
+                        "slotId", key(position), "date", scheduleDates.get(day).toString(), "slotTime", slotTime(position)),
+                        null).outcome("Appointment is cancelled");
+            }
+            default:
+                return toggle(day, scheduleId, position);
+        }
+    }
+
+    // POST /api/appointments with an Idempotency-Key; now and then a client resends an earlier booking
+    private String book(int day, long scheduleId, int position, long patient) throws IOException, InterruptedException {
+        Booking earlier = null;
+        if (ThreadLocalRandom.current().nextInt(100) < replayPercent) {
+            synchronized (bookings) {
+                if (!bookings.isEmpty()) earlier = bookings.get(ThreadLocalRandom.current().nextInt(bookings.size()));
+            }
+        }
+        if (earlier != null) {
+            Response r = send("POST", "/api/appointments", earlier.body, earlier.key);
+            long id = r.body.path("data").path("id").asLong();
+            if (r.status == 200 && id != earlier.appointmentId) replayMismatches.increment();
+            return "replay " + r.outcome();
+        }
+        String key = UUID.randomUUID().toString();
+        String body = json.writeValueAsString(Map.of("patientUserId", patient, "doctorUserId", day + 1,
+                "doctorName", "Doctor " + (day + 1), "scheduleId", scheduleId, "slotId", key(position),
+                "date", scheduleDates.get(day).toString(), "slotTime", slotTime(position)));
+        Response r = send("POST", "/api/appointments", body, key);
+        long id = r.status == 200 ? r.body.path("data").path("id").asLong() : 0;
+        if (id != 0) appointmentIds.add(id);
+        if (r.status == 200 || r.status == 409) bookings.add(new Booking(key, body, id));
+        return r.outcome();
+    }
+
+    // The doctor's page: read the day's slots, then flip one with the version it showed
+    private String toggle(int day, long scheduleId, int position) throws IOException, InterruptedException {
+        JsonNode days = send("GET", "/api/doctor/schedules/" + (day + 1), null, null).body.path("data");
+        for (JsonNode d : days) {
+            if (d.path("id").asLong() != scheduleId) continue;
+            for (JsonNode slot : d.path("slots")) {
+                if (!key(position).equals(slot.path("id").asText())) continue;
+                Map<String, Object> body = new HashMap<>();
+                body.put("active", !slot.path("active").asBoolean());
+                if (slot.hasNonNull("version")) body.put("version", slot.path("version").asLong());
+                return send("PATCH", "/api/doctor/schedules/" + scheduleId + "/slots/" + key(position), body, null).outcome();
+            }
+        }
+        return "SLOT_NOT_LISTED";
+    }
+
+    private static final class Response {
+        final int status;
+        final JsonNode body;
+
+        Response(int status, JsonNode body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        // 409 (taken, held, booked), 503 (busy, retry) and the given 400 messages are answers the
+        // clients expect; anything else is an error
+        String outcome(String... expectedBadRequests) {
+            String message = body.path("message").asText();
+            boolean expected = status == 200 || status == 409 || status == 503
+                    || status == 400 && Arrays.asList(expectedBadRequests).contains(message);
+            if (!expected) throw new IllegalStateException("HTTP " + status + ": " + body);
+            return status == 200 ? "200" : status + " " + message;
+        }
+    }
+
+    private Response send(String method, String path, Object body, String idempotencyKey) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofMinutes(1))
+                .header("Content-Type", "application/json");
+        if (idempotencyKey != null) request.header(IdempotencyService.HEADER, idempotencyKey);
+        String payload = body == null ? null : body instanceof String ? (String) body : json.writeValueAsString(body);
+        request.method(method, payload == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(payload));
+        HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        String text = response.body();
+        return new Response(response.statusCode(), text == null || text.isEmpty() ? json.createObjectNode() : json.readTree(text));
+    }
+
+    private long anyAppointment() {
+        synchronized (appointmentIds) {
+            return appointmentIds.isEmpty() ? 0 : appointmentIds.get(ThreadLocalRandom.current().nextInt(appointmentIds.size()));
+        }
+    }
+
+    private int pick(int percent) {
+        int total = 0;
+        for (int w : mix) total += w;
+        int p = percent * total / 100;
+        for (int i = 0; i < mix.length; i++) {
+            if (p < mix[i]) return i;
+            p -= mix[i];
+        }
+        return mix.length - 1;
+    }
+
+    private static int[] parseMix(String spec) {
+        int[] weights = new int[OPS.length];
+        for (String part : spec.split(",")) {
+            String[] kv = part.trim().split("=");
+            int i = Arrays.asList(OPS).indexOf(kv[0].trim());
+            if (i < 0) throw new IllegalArgumentException("Unknown operation in stress.mix: " + kv[0]);
+            weights[i] = Integer.parseInt(kv[1].trim());
+        }
+        return weights;
+    }
+
+    private static String key(int position) {
+        return "s" + position;
+    }
+
+    private static String slotTime(int position) {
+        return String.format("%02d:%02d-%02d:%02d", 8 + position / 2, position % 2 * 30, 8 + (position + 1) / 2, (position + 1) % 2 * 30);
+    }
+
+    private void report(long[][] latencies, int[] counts, Map<String, LongAdder> outcomes, long elapsedNanos)
+            throws IOException, InterruptedException {
+        System.out.printf("booking stress: mode=%s engine=%s threads=%d ops=%d schedules=%d slots/schedule=%d%n",
+                mode, engine, threads, ops, schedules, slotsPerSchedule);
+        System.out.printf("throughput: %.0f requests/s over %d ms%n", ops * 1e9 / elapsedNanos, elapsedNanos / 1_000_000);
+        for (int op = 0; op < OPS.length; op++) {
+            if (counts[op] == 0) continue;
+            long[] l = Arrays.copyOf(latencies[op], counts[op]);
+            Arrays.sort(l);
+            System.out.printf("  %-10s n=%-6d p50=%dus p95=%dus p99=%dus max=%dus%n", OPS[op], l.length,
+                    l[l.length / 2], l[(int) (l.length * 0.95)], l[(int) (l.length * 0.99)], l[l.length - 1]);
+        }
+        long lockStatements = jdbc.lockStatements.sum();
+        System.out.printf("row locks (FOR UPDATE): %d statements, %d ms total, %d us avg%n", lockStatements,
+                jdbc.lockNanos.sum() / 1_000_000, lockStatements == 0 ? 0 : jdbc.lockNanos.sum() / lockStatements / 1_000);
+        new TreeMap<>(outcomes).forEach((k, v) -> System.out.printf("  %-60s %d%n", k, v.sum()));
+        System.out.println("metrics " + send("GET", "/api/admin/metrics", null, null).body);
+    }
+}
@@ -0,0 +1,83 @@
+package com.medvault.medvault.service;
+
+import com.medvault.medvault.model.User;
+import com.medvault.medvault.repository.UserRepository;
+import com.medvault.medvault.security.UserStatusCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IdentificationIdAllocatorTest {
+
+    private static final int BLOCK = 50;
+
+    // stands in for the database sequences shared by every node (INCREMENT BY 50, starting at 0)
+    private final Map<String, AtomicLong> sequences = new ConcurrentHashMap<>();
+    private final AtomicInteger roundTrips = new AtomicInteger();
+
+    private long nextHi(String sequence) {
+        roundTrips.incrementAndGet();
+        return sequences.computeIfAbsent(sequence, s -> new AtomicLong()).addAndGet(BLOCK);
+    }
+
+    private UserService nodeUserService(PasswordHasher hasher) {
+        UserRepository repo = mock(UserRepository.class);
+        when(repo.save(any(User.class))).thenAnswer(inv -> inv.getArgument(0));
+        return new UserService(repo, mock(UserStatusCache.class), hasher,
+                new IdentificationIdAllocator(this::nextHi, BLOCK));
+    }
+
+    @Test
+    void parallelRegistrationsAcrossNodesNeverCollide() throws Exception {
+        // cheap bcrypt cost so the test exercises allocation rather than hashing
+        PasswordHasher hasher = new PasswordHasher(4, 8, 10_000, 60_000);
+        List<UserService> nodes = List.of(nodeUserService(hasher), nodeUserService(hasher));
+        int users = 4_000;
+
+        ExecutorService pool = Executors.newFixedThreadPool(32);
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            final int n = i;
+            futures.add(pool.submit(() -> {
+                start.await();
+                UserService node = nodes.get(n % nodes.size());
+                String role = n % 3 == 0 ? "doctor" : "patient";
+                User u = node.register("user" + n, "user" + n + "@example.com", "secret1", role);
+                ids.add(u.getIdentificationId());
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+        hasher.shutdown();
+
+        assertThat(ids).hasSize(users);
+        assertThat(ids).allMatch(id -> id.matches("(PID|DID)-\\d{5,}"));
+        // one round trip per block per node, not one per signup
+        assertThat(roundTrips.get()).isLessThanOrEqualTo(users / BLOCK + 2 * nodes.size() * 2);
+    }
+
+    @Test
+    void continuesFromSequencePosition() {
+        sequences.put("identification_pid_seq", new AtomicLong(120)); // migration setval to the highest existing id
+        IdentificationIdAllocator allocator = new IdentificationIdAllocator(this::nextHi, BLOCK);
+        assertThat(allocator.allocate("PID")).isEqualTo("PID-00121");
+        assertThat(allocator.allocate("PID")).isEqualTo("PID-00122");
+        assertThat(allocator.allocate("DID")).isEqualTo("DID-00001");
+        assertThat(roundTrips.get()).isEqualTo(2);
+    }
+}
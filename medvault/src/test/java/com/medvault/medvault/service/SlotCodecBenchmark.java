@@ -0,0 +1,125 @@
+package com.medvault.medvault.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Slot array documents of 16, 64 and 256 slots (every fourth one held), one random target
+ * slot per call. map* is the former controller path: a controller-wide ObjectMapper, a fresh
+ * TypeReference<List<Map<String, Object>>> per call, a linear scan for the id and the whole
+ * array written back. dto* is the former SlotDTO path, which also drops reservedUntil and
+ * reservedBy. codec* is SlotCodec: streaming decode that stops at the target for a lookup,
+ * and typed encode without intermediate maps.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *   -Dexec.mainClass=com.medvault.medvault.service.SlotCodecBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SlotCodecBenchmark {
+
+    // the former DoctorScheduleController.SlotDTO; unknown fields ignored as the HTTP layer does
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class SlotDTO {
+        public String id;
+        public String time;
+        public boolean active;
+    }
+
+    @Param({"16", "64", "256"})
+    public int slots;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final SlotCodec codec = new SlotCodec();
+    private String json;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<SlotCodec.Slot> list = new ArrayList<>(slots);
+        Instant until = Instant.now().plusSeconds(600);
+        for (int i = 0; i < slots; i++) {
+            boolean held = i % 4 == 0;
+            list.add(new SlotCodec.Slot("s" + i, String.format("%02d:%02d", i / 12, i % 12 * 5),
+                    true, (long) i, held ? until : null, held ? 1000L + i : null));
+        }
+        json = codec.encode(list);
+    }
+
+    private String target() {
+        return "s" + ThreadLocalRandom.current().nextInt(slots);
+    }
+
+    @Benchmark
+    public Object mapFind() throws Exception {
+        String key = target();
+        List<Map<String, Object>> list = mapper.readValue(json, new TypeReference<List<Map<String, Object>>>() {});
+        for (Map<String, Object> s : list) {
+            if (key.equals(s.get("id"))) return s;
+        }
+        return null;
+    }
+
+    @Benchmark
+    public Object codecFind() {
+        return codec.find(json, target());
+    }
+
+    @Benchmark
+    public String mapUpdate() throws Exception {
+        String key = target();
+        List<Map<String, Object>> list = mapper.readValue(json, new TypeReference<List<Map<String, Object>>>() {});
+        for (Map<String, Object> s : list) {
+            if (key.equals(s.get("id"))) {
+                s.put("active", false);
+                break;
+            }
+        }
+        return mapper.writeValueAsString(list);
+    }
+
+    @Benchmark
+    public String dtoUpdate() throws Exception {
+        String key = target();
+        List<SlotDTO> list = mapper.readValue(json, new TypeReference<List<SlotDTO>>() {});
+        for (SlotDTO s : list) {
+            if (key.equals(s.id)) {
+                s.active = false;
+                break;
+            }
+        }
+        return mapper.writeValueAsString(list);
+    }
+
+    @Benchmark
+    public String codecUpdate() {
+        String key = target();
+        List<SlotCodec.Slot> list = codec.decode(json);
+        for (int i = 0; i < list.size(); i++) {
+            if (key.equals(list.get(i).id)) {
+                list.set(i, list.get(i).withActive(false));
+                break;
+            }
+        }
+        return codec.encode(list);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SlotCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,86 @@
+package com.medvault.medvault.service;
+
+import com.medvault.medvault.service.ScheduleSlotService.Outcome;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SlotWriter in both booking.concurrency modes against one hot doctor-day (8 slots), run
+ * once per number of concurrent bookers. Each booker books a random slot and, when it wins,
+ * releases it again, so the day never fills up and contention grows with the thread count.
+ * Throughput is reported in ops/ms; the SampleTime run gives the latency percentiles (p0.99).
+ *
+ * The database is in-memory H2 in PostgreSQL mode, so the SQL is SlotWriter's own but the
+ * locking is H2's: compare the modes with each other, not with production numbers.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *   -Dexec.mainClass=com.medvault.medvault.service.SlotConcurrencyBenchmark
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SlotConcurrencyBenchmark {
+
+    private static final int SLOTS = 8;
+    private static final int[] BOOKERS = {1, 4, 16, 64};
+
+    @Param({"pessimistic", "optimistic"})
+    public String mode;
+
+    private HikariDataSource dataSource;
+    private SlotWriter writer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:slots_" + mode + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000");
+        dataSource.setMaximumPoolSize(BOOKERS[BOOKERS.length - 1] + 4);
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("DROP TABLE IF EXISTS schedule_slots");
+        jdbc.execute("CREATE TABLE schedule_slots (id BIGINT AUTO_INCREMENT PRIMARY KEY, schedule_id BIGINT NOT NULL, "
+                + "slot_key VARCHAR(100) NOT NULL, slot_time VARCHAR(100), active BOOLEAN NOT NULL DEFAULT TRUE, "
+                + "reserved_until TIMESTAMP WITH TIME ZONE, reserved_by BIGINT, version BIGINT NOT NULL DEFAULT 0, "
+                + "UNIQUE (schedule_id, slot_key))");
+        List<Object[]> slots = new ArrayList<>();
+        for (int i = 0; i < SLOTS; i++) slots.add(new Object[] {"s" + i, String.format("%02d:00-%02d:30", 9 + i, 9 + i)});
+        jdbc.batchUpdate("INSERT INTO schedule_slots (schedule_id, slot_key, slot_time) VALUES (1, ?, ?)", slots);
+        writer = new SlotWriter(jdbc, mode, 50, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println(writer.stats());
+        dataSource.close();
+    }
+
+    @Benchmark
+    public Outcome bookAndRelease() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String key = "s" + random.nextInt(SLOTS);
+        Outcome outcome = writer.book(1L, key, random.nextLong(1, Long.MAX_VALUE), OffsetDateTime.now());
+        if (outcome == Outcome.OK) writer.release(1L, key);
+        return outcome;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int bookers : BOOKERS) {
+            new Runner(new OptionsBuilder()
+                    .include(SlotConcurrencyBenchmark.class.getSimpleName())
+                    .threads(bookers)
+                    .build()).run();
+        }
+    }
+}
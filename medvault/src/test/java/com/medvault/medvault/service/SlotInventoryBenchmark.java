@@ -0,0 +1,110 @@
+package com.medvault.medvault.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Booking attempts per second against one hot doctor-day (48 slots, 8 threads). Each
+ * attempt picks a random slot and, when it wins, frees it again so the day never fills up.
+ *
+ * pessimisticJson models the former path: the schedule row lock (em.find with
+ * PESSIMISTIC_WRITE, here a lock per day) held while slots_json is parsed, edited and
+ * written back. inMemoryCas is SlotDay as used by SlotInventoryEngine. Database round trips
+ * are left out of both, so the numbers compare the critical sections, not end-to-end latency.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *   -Dexec.mainClass=com.medvault.medvault.service.SlotInventoryBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SlotInventoryBenchmark {
+
+    private static final int SLOTS = 48;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ReentrantLock rowLock = new ReentrantLock();
+    private String slotsJson;
+    private SlotDay day;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        List<Map<String, Object>> slots = new ArrayList<>();
+        String[] keys = new String[SLOTS];
+        boolean[] active = new boolean[SLOTS];
+        for (int i = 0; i < SLOTS; i++) {
+            Map<String, Object> s = new LinkedHashMap<>();
+            s.put("id", "s" + i);
+            s.put("time", String.format("%02d:%02d", 9 + i / 4, (i % 4) * 15));
+            s.put("active", true);
+            slots.add(s);
+            keys[i] = "s" + i;
+            active[i] = true;
+        }
+        slotsJson = mapper.writeValueAsString(slots);
+        day = new SlotDay(1L, LocalDate.now(), keys, active, new long[SLOTS], new long[SLOTS], new long[SLOTS]);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean pessimisticJson() throws Exception {
+        String key = "s" + ThreadLocalRandom.current().nextInt(SLOTS);
+        rowLock.lock();
+        try {
+            List<Map<String, Object>> slots = mapper.readValue(slotsJson, new TypeReference<List<Map<String, Object>>>() {});
+            for (Map<String, Object> s : slots) {
+                if (key.equals(s.get("id"))) {
+                    if (!Boolean.TRUE.equals(s.get("active"))) return false;
+                    s.put("active", false);
+                    slotsJson = mapper.writeValueAsString(slots);
+                    break;
+                }
+            }
+        } finally {
+            rowLock.unlock();
+        }
+        // cancel under the lock again, as the cancel endpoint would
+        rowLock.lock();
+        try {
+            List<Map<String, Object>> slots = mapper.readValue(slotsJson, new TypeReference<List<Map<String, Object>>>() {});
+            for (Map<String, Object> s : slots) {
+                if (key.equals(s.get("id"))) s.put("active", true);
+            }
+            slotsJson = mapper.writeValueAsString(slots);
+        } finally {
+            rowLock.unlock();
+        }
+        return true;
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean inMemoryCas() {
+        int i = ThreadLocalRandom.current().nextInt(SLOTS);
+        long patient = Thread.currentThread().getId();
+        SlotDay.Transition t = day.book(i, patient, System.currentTimeMillis());
+        if (t.outcome != ScheduleSlotService.Outcome.OK) return false;
+        day.setActive(i, true, true, System.currentTimeMillis());
+        return true;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SlotInventoryBenchmark.class.getSimpleName()).build()).run();
+    }
+}
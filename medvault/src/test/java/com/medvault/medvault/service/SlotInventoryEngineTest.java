@@ -0,0 +1,134 @@
+package com.medvault.medvault.service;
+
+import com.medvault.medvault.model.DoctorSchedule;
+import com.medvault.medvault.model.ScheduleSlot;
+import com.medvault.medvault.repository.DoctorScheduleRepository;
+import com.medvault.medvault.repository.ScheduleSlotRepository;
+import com.medvault.medvault.service.ScheduleSlotService.Outcome;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SlotInventoryEngineTest {
+
+    private static final long SCHEDULE = 7L;
+    private static final long PATIENT_X = 11L;
+    private static final long PATIENT_Y = 12L;
+
+    // real transaction synchronization without a database: the engine only needs the callbacks
+    private static final class CallbackTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() { return new Object(); }
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) { }
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) { }
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) { }
+    }
+
+    private SlotInventoryEngine engine;
+    private TransactionTemplate tx;
+    private ExecutorService other;
+
+    @BeforeEach
+    void setUp() {
+        DoctorSchedule schedule = new DoctorSchedule();
+        schedule.setId(SCHEDULE);
+        schedule.setDate(LocalDate.now().plusDays(1));
+        DoctorScheduleRepository schedules = mock(DoctorScheduleRepository.class);
+        when(schedules.findById(SCHEDULE)).thenReturn(Optional.of(schedule));
+
+        ScheduleSlot slot = new ScheduleSlot();
+        slot.setScheduleId(SCHEDULE);
+        slot.setSlotKey("09:00");
+        slot.setActive(true);
+        slot.setStateVersion(0L);
+        ScheduleSlotRepository slots = mock(ScheduleSlotRepository.class);
+        when(slots.findByScheduleIdOrderByPositionAsc(SCHEDULE)).thenReturn(List.of(slot));
+
+        tx = new TransactionTemplate(new CallbackTransactionManager());
+        // the mocked JdbcTemplate finds no unflushed outbox rows and accepts every outbox insert
+        engine = new SlotInventoryEngine(mock(JdbcTemplate.class), tx, slots, schedules,
+                mock(ScheduleCounters.class), new AppointmentTimes("UTC", 30), true, 500);
+        other = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        other.shutdownNow();
+    }
+
+    @Test
+    void rollbackUnderConcurrentBookingCannotDoubleBook() throws Exception {
+        // appointment X holds the slot
+        assertThat(bookInOwnTransaction(PATIENT_X)).isEqualTo(Outcome.OK);
+
+        CountDownLatch released = new CountDownLatch(1);
+        CountDownLatch rollBack = new CountDownLatch(1);
+        Future<Outcome> cancel = other.submit(() -> tx.execute(status -> {
+            Outcome outcome = engine.release(SCHEDULE, "09:00"); // X is cancelled, not yet committed
+            released.countDown();
+            await(rollBack);
+            status.setRollbackOnly();
+            return outcome;
+        }));
+        assertThat(released.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // Y may not take a slot that is free only in an uncommitted transaction
+        assertThat(bookInOwnTransaction(PATIENT_Y)).isEqualTo(Outcome.CONFLICT);
+
+        rollBack.countDown();
+        assertThat(cancel.get(10, TimeUnit.SECONDS)).isEqualTo(Outcome.OK);
+
+        // X is live again and the slot is still taken by it
+        assertThat(bookInOwnTransaction(PATIENT_Y)).isEqualTo(Outcome.UNAVAILABLE);
+        assertThat(engine.stats()).containsEntry("undone", 1L);
+    }
+
+    @Test
+    void committedReleaseIsOpenToOthers() {
+        assertThat(bookInOwnTransaction(PATIENT_X)).isEqualTo(Outcome.OK);
+        Outcome released = tx.execute(status -> engine.release(SCHEDULE, "09:00"));
+        assertThat(released).isEqualTo(Outcome.OK);
+        assertThat(bookInOwnTransaction(PATIENT_Y)).isEqualTo(Outcome.OK);
+    }
+
+    @Test
+    void rollbackUndoesEveryTransitionOfTheTransaction() {
+        tx.executeWithoutResult(status -> {
+            // hold then book in one transaction: the owner may move its own uncommitted state on
+            assertThat(engine.reserve(SCHEDULE, "09:00", PATIENT_X, System.currentTimeMillis() + 60_000)).isEqualTo(Outcome.OK);
+            assertThat(engine.book(SCHEDULE, "09:00", PATIENT_X)).isEqualTo(Outcome.OK);
+            status.setRollbackOnly();
+        });
+        assertThat(bookInOwnTransaction(PATIENT_Y)).isEqualTo(Outcome.OK);
+        assertThat(engine.stats()).containsEntry("undone", 2L);
+    }
+
+    private Outcome bookInOwnTransaction(long patient) {
+        return tx.execute(status -> engine.book(SCHEDULE, "09:00", patient));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+-- H2 (PostgreSQL mode) stand-in for the parts of the Flyway migrations that Hibernate's
+-- schema generation does not cover; used by the "stress" profile only.
+ALTER TABLE doctor_schedules ALTER COLUMN free_slot_count SET DEFAULT 0;
+ALTER TABLE doctor_schedules ADD COLUMN IF NOT EXISTS slots_json VARCHAR;
+
+CREATE TABLE IF NOT EXISTS slot_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    schedule_id BIGINT NOT NULL,
+    slot_key VARCHAR(100) NOT NULL,
+    active BOOLEAN NOT NULL,
+    removed BOOLEAN NOT NULL DEFAULT false,
+    reserved_until TIMESTAMP WITH TIME ZONE,
+    reserved_by BIGINT,
+    state_version BIGINT NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS scheduler_leases (
+    name VARCHAR(100) PRIMARY KEY,
+    owner VARCHAR(200) NOT NULL,
+    expires_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS idempotency_keys (
+    scope VARCHAR(300) NOT NULL,
+    idem_key VARCHAR(200) NOT NULL,
+    request_hash VARCHAR(64) NOT NULL,
+    status_code INTEGER,
+    response_body TEXT,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    expires_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (scope, idem_key)
+);
+
+CREATE TABLE IF NOT EXISTS schedule_generation (
+    doctor_user_id BIGINT PRIMARY KEY,
+    generated_through DATE NOT NULL,
+    template_hash INTEGER NOT NULL,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE SEQUENCE IF NOT EXISTS identification_pid_seq MINVALUE 0 START WITH 0 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS identification_did_seq MINVALUE 0 START WITH 0 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS identification_uid_seq MINVALUE 0 START WITH 0 INCREMENT BY 50;
+-- what IdentificationIdAllocator reads the block size from
+CREATE VIEW IF NOT EXISTS pg_sequences AS
+    SELECT sequence_schema AS schemaname, sequence_name AS sequencename, increment AS increment_by
+    FROM information_schema.sequences;